@@ -0,0 +1,54 @@
+package ca.pjer.sqlper;
+
+import java.util.BitSet;
+
+/**
+ * A query result stored by column, in primitive arrays when the SQL type allows it.
+ * Rows and columns are indexed from 0.
+ */
+public interface ColumnarResult {
+
+    int getRowCount();
+
+    int getColumnCount();
+
+    String[] getColumnNames();
+
+    /**
+     * @return the index of a column by name, ignoring case, or -1 if there is none
+     */
+    int getColumnIndex(String name);
+
+    /**
+     * @return the type of the values of a column: int.class, long.class, double.class, String.class or Object.class
+     */
+    Class getColumnType(int column);
+
+    boolean isNull(int row, int column);
+
+    int getInt(int row, int column);
+
+    long getLong(int row, int column);
+
+    double getDouble(int row, int column);
+
+    String getString(int row, int column);
+
+    Object getObject(int row, int column);
+
+    int[] getInts(int column);
+
+    long[] getLongs(int column);
+
+    double[] getDoubles(int column);
+
+    String[] getStrings(int column);
+
+    Object[] getObjects(int column);
+
+    /**
+     * @return the rows where a primitive column is null (its value is then 0)
+     */
+    BitSet getNulls(int column);
+
+}
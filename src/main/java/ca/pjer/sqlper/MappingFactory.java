@@ -9,6 +9,11 @@ public interface MappingFactory {
 
     ParsedSql parseSql(String sql);
 
+    /**
+     * @param elementCounts the number of elements bound to each parameter of parsedSql, or -1 for a parameter bound to a single value
+     */
+    ParsedSql expandSql(ParsedSql parsedSql, int[] elementCounts);
+
     MappingMetaData extractMetaData(ParsedSql parsedSql, PreparedStatement preparedStatement);
 
     MappingMetaData extractMetaData(ParsedSql parsedSql, ResultSet resultSet);
@@ -2,6 +2,12 @@ package ca.pjer.sqlper;
 
 public interface MappingMetaData {
 
+    /**
+     * The SQL type of a parameter not described by the driver,
+     * it is then inferred from the bound value when the statement is executed.
+     */
+    int UNKNOWN_SQL_TYPE = Integer.MIN_VALUE;
+
     int getCount();
 
     String[] getNames();
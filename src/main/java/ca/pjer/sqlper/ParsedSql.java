@@ -6,4 +6,9 @@ public interface ParsedSql {
 
     String[] getParameterNames();
 
+    /**
+     * @return the index in {@link #getSql()} of the '?' of each parameter, in the same order as {@link #getParameterNames()}
+     */
+    int[] getParameterPositions();
+
 }
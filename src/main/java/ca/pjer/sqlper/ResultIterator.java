@@ -0,0 +1,10 @@
+package ca.pjer.sqlper;
+
+import java.util.Iterator;
+
+public interface ResultIterator<T> extends Iterator<T>, AutoCloseable {
+
+    @Override
+    void close();
+
+}
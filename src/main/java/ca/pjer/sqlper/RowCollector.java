@@ -0,0 +1,18 @@
+package ca.pjer.sqlper;
+
+import java.sql.ResultSet;
+
+/**
+ * Accumulates the rows of a query into a result of any shape, one call per row.
+ * A collector is used by a single query.
+ */
+public interface RowCollector<R> {
+
+    /**
+     * Read the current row of the result set.
+     */
+    void collect(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData);
+
+    R getResult();
+
+}
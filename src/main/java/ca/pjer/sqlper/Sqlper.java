@@ -5,6 +5,11 @@ import java.util.List;
 
 public interface Sqlper extends AutoCloseable {
 
+    /**
+     * @return the connection of this session. With a query result cache, a transaction ended directly on it
+     * invalidates again the results of the tables it wrote only once this session, back in auto commit,
+     * runs an update or a cacheable query, or is closed; prefer {@link #commit()} and {@link #rollback()}.
+     */
     Connection getConnection();
 
     int update(String sql);
@@ -13,6 +18,17 @@ public interface Sqlper extends AutoCloseable {
 
     int update(String sql, Object parameters, String... returning);
 
+    int[] updateBatch(String sql, Iterable<?> parameters);
+
+    int[] updateBatch(String sql, Iterable<?> parameters, int batchSize);
+
+    int[] updateBatch(String sql, Iterable<?> parameters, int batchSize, String... returning);
+
+    /**
+     * Bind every element with the given mapper, instead of the one registered for its type.
+     */
+    <T> int[] updateBatch(String sql, Iterable<T> parameters, int batchSize, Mapper<T> parametersMapper);
+
     <T> List<T> query(String sql, Class<T> resultsType);
 
     <T> List<T> query(String sql, Object parameters, Class<T> resultsType);
@@ -23,4 +39,31 @@ public interface Sqlper extends AutoCloseable {
 
     void queryOne(String sql, Object parameters);
 
+    <T> ResultIterator<T> iterate(String sql, Class<T> resultsType);
+
+    <T> ResultIterator<T> iterate(String sql, Object parameters, Class<T> resultsType);
+
+    ColumnarResult queryColumns(String sql);
+
+    ColumnarResult queryColumns(String sql, Object parameters);
+
+    <R> R collect(String sql, RowCollector<R> collector);
+
+    <R> R collect(String sql, Object parameters, RowCollector<R> collector);
+
+    /**
+     * Commit the transaction of this session, then invalidate again the cached query results of the tables it wrote.
+     */
+    void commit();
+
+    /**
+     * Roll back the transaction of this session, then invalidate again the cached query results of the tables it wrote.
+     */
+    void rollback();
+
+    /**
+     * Cancel the statement being executed, to be called from another thread.
+     */
+    void cancel();
+
 }
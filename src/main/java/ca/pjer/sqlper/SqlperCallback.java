@@ -0,0 +1,10 @@
+package ca.pjer.sqlper;
+
+/**
+ * A unit of work to run with a session.
+ */
+public interface SqlperCallback<T> {
+
+    T call(Sqlper sqlper) throws Exception;
+
+}
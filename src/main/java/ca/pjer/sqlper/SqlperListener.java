@@ -0,0 +1,11 @@
+package ca.pjer.sqlper;
+
+/**
+ * Receives an event after each statement executed by a {@link Sqlper}, successful or not.
+ * Called on the thread of the session, so it should be quick.
+ */
+public interface SqlperListener {
+
+    void statementExecuted(StatementEvent event);
+
+}
@@ -1,11 +1,37 @@
 package ca.pjer.sqlper;
 
+import java.util.concurrent.Future;
+
 public interface SqlperManager {
 
     ConnectionProvider getConnectionProvider();
 
     MappingFactory getMappingFactory();
 
+    /**
+     * Within a {@link #transaction(SqlperCallback)} on the same thread, return the session of the transaction,
+     * whose close does nothing.
+     */
     Sqlper open();
 
+    /**
+     * Run a unit of work in a transaction, committed when it returns and rolled back when it throws.
+     * Nested transactions and sessions opened on the same thread join it, using the same connection,
+     * and a failure in one of them rolls back the whole transaction.
+     */
+    <T> T transaction(SqlperCallback<T> callback);
+
+    /**
+     * The listeners are given to the sessions opened afterward.
+     */
+    void addListener(SqlperListener listener);
+
+    void removeListener(SqlperListener listener);
+
+    /**
+     * Run a unit of work asynchronously, with its own session.
+     * Cancelling the future with mayInterruptIfRunning also cancels the statement being executed.
+     */
+    <T> Future<T> submit(SqlperCallback<T> callback);
+
 }
@@ -0,0 +1,13 @@
+package ca.pjer.sqlper;
+
+/**
+ * A {@link RowCollector} also told of the result set before its first row, even when it has none.
+ */
+public interface StartingRowCollector<R> extends RowCollector<R> {
+
+    /**
+     * Called once, before the first call to {@link #collect}.
+     */
+    void start(MapperRegistry mapperRegistry, MappingMetaData metaData);
+
+}
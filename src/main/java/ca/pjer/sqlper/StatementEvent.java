@@ -0,0 +1,25 @@
+package ca.pjer.sqlper;
+
+/**
+ * Times are in nanoseconds, the mapping time includes the fetching of rows.
+ */
+public interface StatementEvent {
+
+    ParsedSql getParsedSql();
+
+    long getPrepareTime();
+
+    long getBindTime();
+
+    long getExecuteTime();
+
+    long getMappingTime();
+
+    /**
+     * @return the number of rows mapped by a query, or updated by an update
+     */
+    long getRowCount();
+
+    boolean isSuccessful();
+
+}
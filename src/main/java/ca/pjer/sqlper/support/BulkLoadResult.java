@@ -0,0 +1,40 @@
+package ca.pjer.sqlper.support;
+
+import java.util.concurrent.TimeUnit;
+
+public class BulkLoadResult {
+
+    private final long rowCount;
+    private final long offset;
+    private final long elapsedNanos;
+
+    public BulkLoadResult(long rowCount, long offset, long elapsedNanos) {
+        this.rowCount = rowCount;
+        this.offset = offset;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the byte offset in the file after the last row loaded
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rowCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLoadResult{rowCount=" + rowCount + ", offset=" + offset + ", elapsedNanos=" + elapsedNanos + ", rowsPerSecond=" + (long) getRowsPerSecond() + '}';
+    }
+}
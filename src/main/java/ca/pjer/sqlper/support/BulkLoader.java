@@ -0,0 +1,536 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.*;
+import ca.pjer.sqlper.support.mapper.UpperUnderscoreComparator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads a delimited file (CSV, TSV...) with a named parameters INSERT statement, in batches, committed periodically.
+ * The file is memory mapped and each parameter is bound straight from the bytes of its field:
+ * integer columns are parsed without a String, and fields not used by the statement are never decoded.
+ * Parameters are matched by name to the columns of the header line (or of {@link #setColumns(String...)}).
+ * After a failure, {@link #getCommittedOffset()} is where to resume with {@link #load(Path, long)}.
+ */
+public class BulkLoader {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final RecordMapper RECORD_MAPPER = new RecordMapper();
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private final SqlperManager sqlperManager;
+    private final String sql;
+
+    private byte delimiter = ',';
+    private byte quote = '"';
+    private boolean header = true;
+    private String[] columns;
+    private Charset charset = Charset.forName("UTF-8");
+    private int batchSize = SqlperImpl.DEFAULT_BATCH_SIZE;
+    private int commitInterval = 10 * SqlperImpl.DEFAULT_BATCH_SIZE;
+    private int windowSize = WINDOW_SIZE;
+
+    private volatile long committedOffset;
+
+    public BulkLoader(SqlperManager sqlperManager, String sql) {
+        this.sqlperManager = sqlperManager;
+        this.sql = sql;
+    }
+
+    public void setDelimiter(char delimiter) {
+        this.delimiter = (byte) delimiter;
+    }
+
+    public void setQuote(char quote) {
+        this.quote = (byte) quote;
+    }
+
+    /**
+     * @param header true (the default) if the first line of the file names the columns
+     */
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    /**
+     * Name the columns of a file without header line, or override the names of its header.
+     */
+    public void setColumns(String... columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * The charset of the file, it must encode the delimiter, quote and line ends as single ASCII bytes.
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than zero");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param commitInterval the number of rows between commits
+     */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("commitInterval must be greater than zero");
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * @param windowSize the number of bytes of the file mapped at once (64 MiB by default), no record may be larger
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be greater than zero");
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the byte offset after the last committed row of the current or last load
+     */
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public BulkLoadResult load(Path file) {
+        return load(file, 0);
+    }
+
+    /**
+     * @param offset where to start in the file, 0 or the committed offset of a previous load
+     */
+    public BulkLoadResult load(Path file, long offset) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             Sqlper sqlper = sqlperManager.open()) {
+            RecordReader reader = new RecordReader(channel);
+            String[] names = columns;
+            if (header) {
+                reader.seek(0);
+                if (!reader.parse()) {
+                    return new BulkLoadResult(0, offset, System.nanoTime() - start);
+                }
+                if (names == null) {
+                    names = reader.record.decodeAll();
+                }
+                offset = Math.max(offset, reader.position());
+            }
+            if (names == null) {
+                throw new SqlperException("Columns must be named when the file has no header");
+            }
+            MappingFactory mappingFactory = sqlperManager.getMappingFactory();
+            ParsedSql parsedSql = mappingFactory.parseSql(sql);
+            reader.seek(offset);
+            reader.record.fieldIndexes = resolveFields(parsedSql.getParameterNames(), names);
+            committedOffset = offset;
+
+            Connection connection = sqlper.getConnection();
+            if (!connection.getAutoCommit()) {
+                // as within SqlperManager.transaction, whose session is shared: committing would commit it
+                throw new SqlperException("Unable to load " + file + " within a transaction, the loader commits its own");
+            }
+            connection.setAutoCommit(false);
+            long rowCount = 0;
+            Throwable failure = null;
+            try {
+                reader.limit = commitInterval;
+                while (reader.iterator().hasNext()) {
+                    sqlper.updateBatch(sql, reader, batchSize, RECORD_MAPPER);
+                    sqlper.commit();
+                    rowCount += reader.count;
+                    committedOffset = reader.position();
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "{0}", new BulkLoadResult(rowCount, committedOffset, System.nanoTime() - start));
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                try {
+                    sqlper.rollback();
+                } catch (SqlperException e2) {
+                    e.addSuppressed(e2);
+                }
+                throw new SqlperException("Unable to load " + file + ", resume from offset " + committedOffset, e);
+            } finally {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    if (failure == null) {
+                        throw e;
+                    }
+                    failure.addSuppressed(e);
+                }
+            }
+            return new BulkLoadResult(rowCount, committedOffset, System.nanoTime() - start);
+        } catch (SqlperException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SqlperException("Unable to load " + file + ", resume from offset " + committedOffset, e);
+        }
+    }
+
+    private static int[] resolveFields(String[] parameterNames, String[] names) {
+        int[] fieldIndexes = new int[parameterNames.length];
+        for (int i = 0; i < parameterNames.length; i++) {
+            fieldIndexes[i] = -1;
+            for (int f = 0; f < names.length; f++) {
+                if (parameterNames[i] != null && UpperUnderscoreComparator.INSTANCE.compare(parameterNames[i], names[f]) == 0) {
+                    fieldIndexes[i] = f;
+                    break;
+                }
+            }
+            if (fieldIndexes[i] < 0) {
+                throw new SqlperException("No column named '" + parameterNames[i] + "' in " + Arrays.toString(names));
+            }
+        }
+        return fieldIndexes;
+    }
+
+    /**
+     * Parses records one at a time from a window of the file mapped in memory,
+     * and iterates over up to limit of them for a batch update.
+     */
+    private class RecordReader implements Iterable<Record>, Iterator<Record> {
+
+        private final FileChannel channel;
+        private final long size;
+        private final Record record = new Record();
+
+        private MappedByteBuffer buffer;
+        private long windowStart;
+        private int windowLimit;
+        // the start of the next record in the window
+        private int next;
+
+        private int limit;
+        private int count;
+        private boolean parsed;
+
+        private RecordReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            size = channel.size();
+        }
+
+        private long position() {
+            return windowStart + next;
+        }
+
+        private void seek(long position) throws IOException {
+            windowStart = Math.min(position, size);
+            windowLimit = (int) Math.min(windowSize, size - windowStart);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLimit);
+            record.buffer = buffer;
+            next = 0;
+            parsed = false;
+        }
+
+        @Override
+        public Iterator<Record> iterator() {
+            count = 0;
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (parsed) {
+                return true;
+            }
+            if (count >= limit) {
+                return false;
+            }
+            try {
+                parsed = parse();
+            } catch (IOException e) {
+                throw new SqlperException("Unable to read file", e);
+            }
+            return parsed;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            parsed = false;
+            count++;
+            return record;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Parse the next non empty record, moving the window forward when it ends in the middle of one.
+         */
+        private boolean parse() throws IOException {
+            while (true) {
+                if (next >= windowLimit && windowStart + windowLimit >= size) {
+                    return false;
+                }
+                boolean eof = windowStart + windowLimit >= size;
+                int end = parseRecord(next, eof);
+                if (end < 0) {
+                    if (next == 0) {
+                        throw new SqlperException("Record at offset " + windowStart + " is larger than " + windowSize + " bytes");
+                    }
+                    seek(windowStart + next);
+                    continue;
+                }
+                next = end;
+                if (record.fieldCount > 1 || record.ends[0] > record.starts[0] || record.quoted[0]) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return the start of the following record, or -1 if this one is not complete in the window
+         */
+        private int parseRecord(int p, boolean eof) {
+            MappedByteBuffer buffer = this.buffer;
+            int limit = windowLimit;
+            record.fieldCount = 0;
+            while (true) {
+                int start = p;
+                int end;
+                boolean quoted = false;
+                boolean escaped = false;
+                if (p < limit && buffer.get(p) == quote) {
+                    quoted = true;
+                    start = ++p;
+                    while (true) {
+                        if (p >= limit) {
+                            if (eof) {
+                                throw new SqlperException("Unterminated quoted field at offset " + (windowStart + start));
+                            }
+                            return -1;
+                        }
+                        if (buffer.get(p) == quote) {
+                            if (p + 1 >= limit && !eof) {
+                                return -1;
+                            }
+                            if (p + 1 < limit && buffer.get(p + 1) == quote) {
+                                escaped = true;
+                                p += 2;
+                                continue;
+                            }
+                            end = p++;
+                            break;
+                        }
+                        p++;
+                    }
+                } else {
+                    while (p < limit) {
+                        byte b = buffer.get(p);
+                        if (b == delimiter || b == '\n' || b == '\r') {
+                            break;
+                        }
+                        p++;
+                    }
+                    end = p;
+                }
+                record.add(start, end, quoted, escaped);
+                if (p >= limit) {
+                    return eof ? p : -1;
+                }
+                byte b = buffer.get(p);
+                if (b == delimiter) {
+                    p++;
+                } else if (b == '\n') {
+                    return p + 1;
+                } else if (b == '\r') {
+                    p++;
+                    if (p < limit && buffer.get(p) == '\n') {
+                        return p + 1;
+                    }
+                    return p < limit || eof ? p : -1;
+                } else {
+                    throw new SqlperException("Unexpected character after quoted field at offset " + (windowStart + p));
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds a record straight from its fields, records are never mapped from results.
+     */
+    private static class RecordMapper implements Mapper<Record> {
+
+        @Override
+        public void map(MapperRegistry mapperRegistry, PreparedStatement preparedStatement, MappingMetaData metaData, int index, Class<Record> type, Record record) {
+            record.bind(preparedStatement, metaData);
+        }
+
+        @Override
+        public Record map(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData, int index, Class<Record> type, Record record) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The fields of the current record, as positions in the mapped window.
+     */
+    private class Record {
+
+        private MappedByteBuffer buffer;
+        private int[] fieldIndexes;
+        private int fieldCount;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private boolean[] quoted = new boolean[16];
+        private boolean[] escaped = new boolean[16];
+        private byte[] bytes = new byte[256];
+
+        private void add(int start, int end, boolean quoted, boolean escaped) {
+            if (fieldCount == starts.length) {
+                int length = fieldCount * 2;
+                starts = Arrays.copyOf(starts, length);
+                ends = Arrays.copyOf(ends, length);
+                this.quoted = Arrays.copyOf(this.quoted, length);
+                this.escaped = Arrays.copyOf(this.escaped, length);
+            }
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            this.quoted[fieldCount] = quoted;
+            this.escaped[fieldCount] = escaped;
+            fieldCount++;
+        }
+
+        private boolean isNull(int field) {
+            return field >= fieldCount || (!quoted[field] && starts[field] == ends[field]);
+        }
+
+        private String decode(int field) {
+            int length = 0;
+            int end = ends[field];
+            if (bytes.length < end - starts[field]) {
+                bytes = new byte[Math.max(end - starts[field], bytes.length * 2)];
+            }
+            for (int p = starts[field]; p < end; p++) {
+                byte b = buffer.get(p);
+                bytes[length++] = b;
+                if (escaped[field] && b == quote) {
+                    // a doubled quote
+                    p++;
+                }
+            }
+            return new String(bytes, 0, length, charset);
+        }
+
+        private String[] decodeAll() {
+            String[] values = new String[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                values[i] = decode(i).trim();
+            }
+            return values;
+        }
+
+        /**
+         * @return true if the field is an integer small enough to be parsed without overflow
+         */
+        private boolean isInteger(int field) {
+            int p = starts[field];
+            int end = ends[field];
+            if (p < end && (buffer.get(p) == '-' || buffer.get(p) == '+')) {
+                p++;
+            }
+            // at most 18 digits, so it cannot overflow
+            if (p == end || end - p > 18) {
+                return false;
+            }
+            for (; p < end; p++) {
+                byte b = buffer.get(p);
+                if (b < '0' || b > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long parseLong(int field) {
+            int p = starts[field];
+            int end = ends[field];
+            boolean negative = buffer.get(p) == '-';
+            if (negative || buffer.get(p) == '+') {
+                p++;
+            }
+            long value = 0;
+            for (; p < end; p++) {
+                value = value * 10 + (buffer.get(p) - '0');
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Bind the fields of this record to the parameters of the statement.
+         */
+        private void bind(PreparedStatement statement, MappingMetaData metaData) {
+            int[] sqlTypes = metaData.getSqlTypes();
+            for (int i = 0; i < metaData.getCount(); i++) {
+                try {
+                    bind(statement, i + 1, fieldIndexes[i], sqlTypes[i]);
+                } catch (SQLException e) {
+                    throw new SqlperException("Unable to set column '" + (i + 1) + "' from field '" + metaData.getNames()[i] + "'", e);
+                }
+            }
+        }
+
+        private void bind(PreparedStatement statement, int column, int field, int sqlType) throws SQLException {
+            if (isNull(field)) {
+                statement.setNull(column, sqlType == MappingMetaData.UNKNOWN_SQL_TYPE ? Types.VARCHAR : sqlType);
+                return;
+            }
+            switch (sqlType) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                    if (isInteger(field)) {
+                        long value = parseLong(field);
+                        // out of range, the driver rejects it instead of it wrapping around
+                        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                            statement.setLong(column, value);
+                        } else {
+                            statement.setInt(column, (int) value);
+                        }
+                        return;
+                    }
+                    break;
+                case Types.BIGINT:
+                    if (isInteger(field)) {
+                        statement.setLong(column, parseLong(field));
+                        return;
+                    }
+                    break;
+                default:
+            }
+            statement.setString(column, decode(field));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.ColumnarResult;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.SqlperException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Filled row by row from a {@link ResultSet}, the columns arrays grow geometrically and are trimmed once done.
+ */
+public class ColumnarResultImpl implements ColumnarResult {
+
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int STRING = 3;
+    private static final int OBJECT = 4;
+
+    private static final Class[] TYPES = {Integer.TYPE, Long.TYPE, Double.TYPE, String.class, Object.class};
+
+    private final String[] names;
+    private final int[] kinds;
+    private final Object[] columns;
+    private final BitSet[] nulls;
+
+    private int rowCount;
+    private int capacity;
+
+    public ColumnarResultImpl(MappingMetaData metaData, int initialCapacity) {
+        int count = metaData.getCount();
+        names = metaData.getNames();
+        kinds = new int[count];
+        columns = new Object[count];
+        nulls = new BitSet[count];
+        capacity = Math.max(initialCapacity, 16);
+        for (int i = 0; i < count; i++) {
+            kinds[i] = getKind(metaData.getSqlTypes()[i]);
+            columns[i] = newColumn(kinds[i], capacity);
+            if (kinds[i] <= DOUBLE) {
+                nulls[i] = new BitSet();
+            }
+        }
+    }
+
+    private static int getKind(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INT;
+            case Types.BIGINT:
+                return LONG;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return STRING;
+            default:
+                // exact numerics, booleans, dates and the others keep their JDBC object
+                return OBJECT;
+        }
+    }
+
+    private static Object newColumn(int kind, int capacity) {
+        switch (kind) {
+            case INT:
+                return new int[capacity];
+            case LONG:
+                return new long[capacity];
+            case DOUBLE:
+                return new double[capacity];
+            case STRING:
+                return new String[capacity];
+            default:
+                return new Object[capacity];
+        }
+    }
+
+    private static Object resizeColumn(Object column, int kind, int capacity) {
+        switch (kind) {
+            case INT:
+                return Arrays.copyOf((int[]) column, capacity);
+            case LONG:
+                return Arrays.copyOf((long[]) column, capacity);
+            case DOUBLE:
+                return Arrays.copyOf((double[]) column, capacity);
+            case STRING:
+                return Arrays.copyOf((String[]) column, capacity);
+            default:
+                return Arrays.copyOf((Object[]) column, capacity);
+        }
+    }
+
+    /**
+     * Append the current row of a result set.
+     */
+    public void read(ResultSet resultSet) throws SQLException {
+        if (rowCount == capacity) {
+            resize(capacity + (capacity >> 1) + 1);
+        }
+        int row = rowCount;
+        for (int i = 0; i < columns.length; i++) {
+            int column = i + 1;
+            switch (kinds[i]) {
+                case INT:
+                    ((int[]) columns[i])[row] = resultSet.getInt(column);
+                    break;
+                case LONG:
+                    ((long[]) columns[i])[row] = resultSet.getLong(column);
+                    break;
+                case DOUBLE:
+                    ((double[]) columns[i])[row] = resultSet.getDouble(column);
+                    break;
+                case STRING:
+                    ((String[]) columns[i])[row] = resultSet.getString(column);
+                    continue;
+                default:
+                    ((Object[]) columns[i])[row] = resultSet.getObject(column);
+                    continue;
+            }
+            if (resultSet.wasNull()) {
+                nulls[i].set(row);
+            }
+        }
+        rowCount++;
+    }
+
+    /**
+     * Release the unused capacity of the columns, once all the rows are read.
+     */
+    public void trim() {
+        if (capacity != rowCount) {
+            resize(rowCount);
+        }
+    }
+
+    private void resize(int capacity) {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = resizeColumn(columns[i], kinds[i], capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return names.clone();
+    }
+
+    @Override
+    public int getColumnIndex(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null && names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Class getColumnType(int column) {
+        return TYPES[kinds[column]];
+    }
+
+    @Override
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        switch (kinds[column]) {
+            case STRING:
+                return ((String[]) columns[column])[row] == null;
+            case OBJECT:
+                return ((Object[]) columns[column])[row] == null;
+            default:
+                return nulls[column].get(row);
+        }
+    }
+
+    @Override
+    public int getInt(int row, int column) {
+        checkRow(row);
+        if (kinds[column] != INT) {
+            throw new SqlperException("Column " + column + " is of type " + getColumnType(column) + ", not int");
+        }
+        return ((int[]) columns[column])[row];
+    }
+
+    @Override
+    public long getLong(int row, int column) {
+        checkRow(row);
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return ((long[]) columns[column])[row];
+            default:
+                throw new SqlperException("Column " + column + " is of type " + getColumnType(column) + ", not long");
+        }
+    }
+
+    @Override
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return ((long[]) columns[column])[row];
+            case DOUBLE:
+                return ((double[]) columns[column])[row];
+            default:
+                throw new SqlperException("Column " + column + " is of type " + getColumnType(column) + ", not double");
+        }
+    }
+
+    @Override
+    public String getString(int row, int column) {
+        if (kinds[column] == STRING) {
+            checkRow(row);
+            return ((String[]) columns[column])[row];
+        }
+        Object value = getObject(row, column);
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public Object getObject(int row, int column) {
+        if (isNull(row, column)) {
+            return null;
+        }
+        switch (kinds[column]) {
+            case INT:
+                return ((int[]) columns[column])[row];
+            case LONG:
+                return ((long[]) columns[column])[row];
+            case DOUBLE:
+                return ((double[]) columns[column])[row];
+            case STRING:
+                return ((String[]) columns[column])[row];
+            default:
+                return ((Object[]) columns[column])[row];
+        }
+    }
+
+    @Override
+    public int[] getInts(int column) {
+        return (int[]) getColumn(column, INT);
+    }
+
+    @Override
+    public long[] getLongs(int column) {
+        return (long[]) getColumn(column, LONG);
+    }
+
+    @Override
+    public double[] getDoubles(int column) {
+        return (double[]) getColumn(column, DOUBLE);
+    }
+
+    @Override
+    public String[] getStrings(int column) {
+        return (String[]) getColumn(column, STRING);
+    }
+
+    @Override
+    public Object[] getObjects(int column) {
+        return (Object[]) getColumn(column, OBJECT);
+    }
+
+    @Override
+    public BitSet getNulls(int column) {
+        if (nulls[column] != null) {
+            return (BitSet) nulls[column].clone();
+        }
+        BitSet bitSet = new BitSet();
+        for (int row = 0; row < rowCount; row++) {
+            if (isNull(row, column)) {
+                bitSet.set(row);
+            }
+        }
+        return bitSet;
+    }
+
+    private Object getColumn(int column, int kind) {
+        if (kinds[column] != kind) {
+            throw new SqlperException("Column " + column + " is of type " + getColumnType(column) + ", not " + TYPES[kind]);
+        }
+        if (capacity != rowCount) {
+            return resizeColumn(columns[column], kind, rowCount);
+        }
+        return columns[column];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+    }
+}
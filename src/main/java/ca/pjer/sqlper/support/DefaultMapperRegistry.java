@@ -2,12 +2,19 @@ package ca.pjer.sqlper.support;
 
 import ca.pjer.sqlper.Mapper;
 import ca.pjer.sqlper.MapperRegistry;
+import ca.pjer.sqlper.SqlperException;
+import ca.pjer.sqlper.support.cache.CacheStatistics;
 import ca.pjer.sqlper.support.mapper.*;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,11 +22,25 @@ public class DefaultMapperRegistry implements MapperRegistry {
 
     private final Logger logger = Logger.getLogger(getClass().getName());
 
-    private final Map<Class, Mapper> runtimeMappers = Collections.synchronizedMap(new LinkedHashMap<Class, Mapper>());
-    private final Map<Class, Mapper> customMappers = Collections.synchronizedMap(new LinkedHashMap<Class, Mapper>());
-    private final Map<Class, Mapper> defaultMappers = Collections.synchronizedMap(new LinkedHashMap<Class, Mapper>());
+    // only written by the constructor
+    private final Map<Class, Mapper> defaultMappers = new LinkedHashMap<>();
+
+    // copy on write, a new resolution is created on each write
+    private volatile Map<Class, Mapper> customMappers = Collections.emptyMap();
+    private volatile Resolution resolution;
+    private final Set<PlanCache> planCaches = Collections.newSetFromMap(new WeakHashMap<PlanCache, Boolean>());
+
+    // find is too hot to count by default
+    private volatile boolean statisticsEnabled;
+    private final AtomicLong findCount = new AtomicLong();
+    private final AtomicLong resolveCount = new AtomicLong();
+    private final AtomicLong resetCount = new AtomicLong();
 
     public DefaultMapperRegistry() {
+        this(MethodHandlePropertyAccessorFactory.INSTANCE);
+    }
+
+    public DefaultMapperRegistry(PropertyAccessorFactory propertyAccessorFactory) {
 
         // JDBC native scalar
 
@@ -27,13 +48,13 @@ public class DefaultMapperRegistry implements MapperRegistry {
 
         registerDefaultMapper(new JDBCScalarMapper(String.class), String.class);
 
-        registerDefaultMapper(new JDBCScalarMapper(Boolean.class), Boolean.TYPE, Boolean.class);
-        registerDefaultMapper(new JDBCScalarMapper(Byte.class), Byte.TYPE, Byte.class);
-        registerDefaultMapper(new JDBCScalarMapper(Short.class), Short.TYPE, Short.class);
-        registerDefaultMapper(new JDBCScalarMapper(Integer.class), Integer.TYPE, Integer.class);
-        registerDefaultMapper(new JDBCScalarMapper(Long.class), Long.TYPE, Long.class);
-        registerDefaultMapper(new JDBCScalarMapper(Float.class), Float.TYPE, Float.class);
-        registerDefaultMapper(new JDBCScalarMapper(Double.class), Double.TYPE, Double.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Boolean.TYPE), Boolean.TYPE, Boolean.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Byte.TYPE), Byte.TYPE, Byte.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Short.TYPE), Short.TYPE, Short.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Integer.TYPE), Integer.TYPE, Integer.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Long.TYPE), Long.TYPE, Long.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Float.TYPE), Float.TYPE, Float.class);
+        registerDefaultMapper(new PrimitiveScalarMapper(Double.TYPE), Double.TYPE, Double.class);
 
         registerDefaultMapper(new JDBCScalarMapper(byte[].class), byte[].class);
 
@@ -64,17 +85,25 @@ public class DefaultMapperRegistry implements MapperRegistry {
         registerDefaultMapper(new CalendarConverterMapper(), Calendar.class);
         registerDefaultMapper(new URIConverterMapper(), URI.class);
 
+        // Streams
+
+        registerDefaultMapper(new LobStreamMapper(InputStream.class), InputStream.class);
+        registerDefaultMapper(new LobStreamMapper(Reader.class), Reader.class);
+        registerDefaultMapper(new LobStreamMapper(ReadableByteChannel.class), ReadableByteChannel.class);
+
         // Object / Bean
 
         registerDefaultMapper(new ListObjectMapper(), List.class);
         registerDefaultMapper(new MapObjectMapper(UpperUnderscoreComparator.INSTANCE), Map.class);
 
-        registerDefaultMapper(new ReflexionObjectMapper(UpperUnderscoreComparator.INSTANCE), Object.class);
+        registerDefaultMapper(new ReflexionObjectMapper(UpperUnderscoreComparator.INSTANCE, propertyAccessorFactory), Object.class);
+
+        resolution = new Resolution(customMappers);
     }
 
     public DefaultMapperRegistry(Map<Class, Mapper> mappers) {
         this();
-        this.customMappers.putAll(mappers);
+        registerAll(mappers);
     }
 
     private void registerDefaultMapper(Mapper mapper, Class... types) {
@@ -85,48 +114,172 @@ public class DefaultMapperRegistry implements MapperRegistry {
 
     @Override
     public <T> void register(Class<? extends T> type, Mapper<T> mapper) {
-        customMappers.put(type, mapper);
+        registerAll(Collections.<Class, Mapper>singletonMap(type, mapper));
+    }
+
+    private synchronized void registerAll(Map<Class, Mapper> mappers) {
+        Map<Class, Mapper> newCustomMappers = new LinkedHashMap<>(customMappers);
+        newCustomMappers.putAll(mappers);
+        customMappers = Collections.unmodifiableMap(newCustomMappers);
+        if (resolution != null) {
+            resetCount.addAndGet(resolution.size.get());
+        }
+        resolution = new Resolution(customMappers);
+        // object mappers compile the mappers of their properties, those may have changed
+        for (Mapper mapper : newCustomMappers.values()) {
+            if (mapper instanceof PlanCache) {
+                ((PlanCache) mapper).clearPlans();
+            }
+        }
+        for (Mapper mapper : defaultMappers.values()) {
+            if (mapper instanceof PlanCache) {
+                ((PlanCache) mapper).clearPlans();
+            }
+        }
+        synchronized (planCaches) {
+            for (PlanCache planCache : planCaches) {
+                planCache.clearPlans();
+            }
+        }
+    }
+
+    /**
+     * Clear the plans of this cache, which is not a registered mapper, whenever a mapper is registered.
+     * It is held weakly.
+     */
+    public void addPlanCache(PlanCache planCache) {
+        synchronized (planCaches) {
+            planCaches.add(planCache);
+        }
+    }
+
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Enable the counting of lookups, misses (resolutions of a type) are always counted.
+     */
+    public void setStatisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled = statisticsEnabled;
+    }
+
+    /**
+     * Evictions are the resolved types discarded by a registration.
+     */
+    public CacheStatistics getStatistics() {
+        long missCount = resolveCount.get();
+        long hitCount = Math.max(findCount.get() - missCount, 0);
+        return new CacheStatistics(hitCount, missCount, resetCount.get(), resolution.size.get());
     }
 
     @Override
     public <T> Mapper<T> find(Class<T> type) {
-        Mapper mapper = runtimeMappers.get(type);
+        if (statisticsEnabled) {
+            findCount.incrementAndGet();
+        }
+        Resolution resolution = this.resolution;
+        if (type == null) {
+            return resolution.nullMapper;
+        }
+        return resolution.get(type);
+    }
+
+    private Mapper resolve(Map<Class, Mapper> customMappers, Class type) {
+        Mapper mapper = findMostSpecific(customMappers, type, "user defined");
+        if (mapper == null) {
+            mapper = findMostSpecific(defaultMappers, type, "default");
+        }
+        if (mapper == null) {
+            throw new SqlperException("No mapper found for type " + type);
+        }
+        return mapper;
+    }
+
+    private Mapper findMostSpecific(Map<Class, Mapper> mappers, Class type, String kind) {
+        Mapper mapper = mappers.get(type);
         if (mapper != null) {
             return mapper;
         }
-        if (type != null) {
-            mapper = customMappers.get(type);
-            if (mapper == null) {
-                for (Map.Entry<Class, Mapper> entry : customMappers.entrySet()) {
-                    if (entry.getKey() != null && entry.getKey().isAssignableFrom(type)) {
-                        logger.log(Level.INFO, "No exact mapper found for {0}, but {0} is assignable to {1} so user defined mapper {2} will be used", new Object[]{type, entry.getKey(), entry.getValue()});
-                        mapper = entry.getValue();
-                        break;
-                    }
-                }
-                if (mapper == null) {
-                    mapper = defaultMappers.get(type);
-                    if (mapper == null) {
-                        for (Map.Entry<Class, Mapper> entry : defaultMappers.entrySet()) {
-                            if (entry.getKey() != null && entry.getKey().isAssignableFrom(type)) {
-                                logger.log(Level.INFO, "No exact mapper found for {0}, but {0} is assignable to {1} so default mapper {2} will be used", new Object[]{type, entry.getKey(), entry.getValue()});
-                                mapper = entry.getValue();
-                                break;
-                            }
-                        }
-                    }
+        // all the registered super types, ordered by distance in the hierarchy, then by registration order
+        final Map<Class, Integer> distances = hierarchyDistances(type);
+        List<Class> candidates = new ArrayList<>();
+        for (Class candidate : mappers.keySet()) {
+            if (candidate != null && candidate.isAssignableFrom(type)) {
+                candidates.add(candidate);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Collections.sort(candidates, new Comparator<Class>() {
+            @Override
+            public int compare(Class c1, Class c2) {
+                Integer d1 = distances.get(c1);
+                Integer d2 = distances.get(c2);
+                return Integer.compare(d1 != null ? d1 : Integer.MAX_VALUE, d2 != null ? d2 : Integer.MAX_VALUE);
+            }
+        });
+        // the most specific is the first one that is not a super type of another candidate
+        Class mostSpecific = null;
+        for (Class candidate : candidates) {
+            boolean moreSpecificExists = false;
+            for (Class other : candidates) {
+                if (other != candidate && candidate.isAssignableFrom(other)) {
+                    moreSpecificExists = true;
+                    break;
                 }
             }
-        } else {
-            mapper = customMappers.get(null);
-            if (mapper == null) {
-                mapper = defaultMappers.get(null);
+            if (!moreSpecificExists) {
+                mostSpecific = candidate;
+                break;
             }
         }
-        if (mapper == null) {
-            throw new RuntimeException("No mapper found for type " + type);
-        }
-        runtimeMappers.put(type, mapper);
+        mapper = mappers.get(mostSpecific);
+        logger.log(Level.FINE, "No exact mapper found for {0}, but {0} is assignable to {1} so {2} mapper {3} will be used", new Object[]{type, mostSpecific, kind, mapper});
         return mapper;
     }
+
+    private static Map<Class, Integer> hierarchyDistances(Class type) {
+        Map<Class, Integer> distances = new HashMap<>();
+        Deque<Class> queue = new ArrayDeque<>();
+        distances.put(type, 0);
+        queue.add(type);
+        while (!queue.isEmpty()) {
+            Class current = queue.poll();
+            int distance = distances.get(current) + 1;
+            List<Class> parents = new ArrayList<>();
+            if (current.getSuperclass() != null) {
+                parents.add(current.getSuperclass());
+            }
+            Collections.addAll(parents, current.getInterfaces());
+            for (Class parent : parents) {
+                if (!distances.containsKey(parent)) {
+                    distances.put(parent, distance);
+                    queue.add(parent);
+                }
+            }
+        }
+        return distances;
+    }
+
+    private class Resolution extends ClassValue<Mapper> {
+
+        private final Map<Class, Mapper> customMappers;
+        private final Mapper nullMapper;
+        private final AtomicInteger size = new AtomicInteger();
+
+        private Resolution(Map<Class, Mapper> customMappers) {
+            this.customMappers = customMappers;
+            Mapper nullMapper = customMappers.get(null);
+            this.nullMapper = nullMapper != null ? nullMapper : defaultMappers.get(null);
+        }
+
+        @Override
+        protected Mapper computeValue(Class<?> type) {
+            resolveCount.incrementAndGet();
+            size.incrementAndGet();
+            return resolve(customMappers, type);
+        }
+    }
 }
@@ -1,33 +1,48 @@
 package ca.pjer.sqlper.support;
 
 import ca.pjer.sqlper.*;
+import ca.pjer.sqlper.support.cache.Cache;
+import ca.pjer.sqlper.support.cache.CacheStatistics;
+import ca.pjer.sqlper.support.cache.LruCache;
 
 import java.sql.*;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DefaultMappingFactory implements MappingFactory {
 
-    // TODO configurable ?
-    private static final Pattern PARAM_PATTERN = Pattern.compile("[^:](:([\\p{Alpha}_][\\p{Alnum}_]*))");
+    public static final int DEFAULT_CACHE_SIZE = 1024;
 
     private final MapperRegistry mapperRegistry;
 
-    private final Map<String, ParsedSql> parsedSqlCache;
-    private final Map<String, MappingMetaData> preparedStatementMetaDataCache;
-    private final Map<String, MappingMetaData> resultSetMetaDataCache;
+    private final Cache<String, ParsedSql> parsedSqlCache;
+    private final Cache<String, MappingMetaData> preparedStatementMetaDataCache;
+    private final Cache<String, MappingMetaData> resultSetMetaDataCache;
+
+    private final Map<String, int[]> declaredParameterTypes = new ConcurrentHashMap<>();
+    private volatile boolean parameterMetaDataEnabled = true;
 
     public DefaultMappingFactory() {
         this(new DefaultMapperRegistry());
     }
 
     public DefaultMappingFactory(MapperRegistry mapperRegistry) {
+        this(mapperRegistry,
+                new LruCache<String, ParsedSql>(DEFAULT_CACHE_SIZE),
+                new LruCache<String, MappingMetaData>(DEFAULT_CACHE_SIZE),
+                new LruCache<String, MappingMetaData>(DEFAULT_CACHE_SIZE));
+    }
+
+    public DefaultMappingFactory(MapperRegistry mapperRegistry,
+                                 Cache<String, ParsedSql> parsedSqlCache,
+                                 Cache<String, MappingMetaData> preparedStatementMetaDataCache,
+                                 Cache<String, MappingMetaData> resultSetMetaDataCache) {
         this.mapperRegistry = mapperRegistry;
-        parsedSqlCache = Collections.synchronizedMap(new WeakHashMap<String, ParsedSql>());
-        preparedStatementMetaDataCache = Collections.synchronizedMap(new WeakHashMap<String, MappingMetaData>());
-        resultSetMetaDataCache = Collections.synchronizedMap(new WeakHashMap<String, MappingMetaData>());
+        this.parsedSqlCache = parsedSqlCache;
+        this.preparedStatementMetaDataCache = preparedStatementMetaDataCache;
+        this.resultSetMetaDataCache = resultSetMetaDataCache;
     }
 
     @Override
@@ -35,20 +50,109 @@ public class DefaultMappingFactory implements MappingFactory {
         return mapperRegistry;
     }
 
+    public Cache<String, ParsedSql> getParsedSqlCache() {
+        return parsedSqlCache;
+    }
+
+    public Cache<String, MappingMetaData> getPreparedStatementMetaDataCache() {
+        return preparedStatementMetaDataCache;
+    }
+
+    public Cache<String, MappingMetaData> getResultSetMetaDataCache() {
+        return resultSetMetaDataCache;
+    }
+
+    public boolean isParameterMetaDataEnabled() {
+        return parameterMetaDataEnabled;
+    }
+
+    /**
+     * When disabled, the SQL types of parameters are not asked to the driver (often a round trip to the server),
+     * but inferred from the bound values, see {@link ca.pjer.sqlper.support.mapper.ScalarMapper#inferSqlType}.
+     */
+    public void setParameterMetaDataEnabled(boolean parameterMetaDataEnabled) {
+        this.parameterMetaDataEnabled = parameterMetaDataEnabled;
+    }
+
+    /**
+     * Declare the SQL types of the parameters of a statement (in order, {@link MappingMetaData#UNKNOWN_SQL_TYPE} to infer one),
+     * so they are not asked to the driver nor inferred.
+     */
+    public void declareParameterTypes(String sql, int... sqlTypes) {
+        ParsedSql parsedSql = parseSql(sql);
+        if (sqlTypes.length != parsedSql.getParameterNames().length) {
+            throw new IllegalArgumentException("Expected " + parsedSql.getParameterNames().length + " parameter types, got " + sqlTypes.length);
+        }
+        declaredParameterTypes.put(parsedSql.getSql(), sqlTypes.clone());
+        preparedStatementMetaDataCache.remove(parsedSql.getSql());
+    }
+
+    /**
+     * @return the statistics of each cache by name, including the mapper registry one when it keeps any
+     */
+    public Map<String, CacheStatistics> getCacheStatistics() {
+        Map<String, CacheStatistics> statistics = new LinkedHashMap<>();
+        statistics.put("parsedSql", parsedSqlCache.getStatistics());
+        statistics.put("preparedStatementMetaData", preparedStatementMetaDataCache.getStatistics());
+        statistics.put("resultSetMetaData", resultSetMetaDataCache.getStatistics());
+        if (mapperRegistry instanceof DefaultMapperRegistry) {
+            statistics.put("mapperRegistry", ((DefaultMapperRegistry) mapperRegistry).getStatistics());
+        }
+        return statistics;
+    }
+
     @Override
     public ParsedSql parseSql(String sql) {
         ParsedSql parsedSql = parsedSqlCache.get(sql);
         if (parsedSql == null) {
-            parsedSql = new PatternParsedSql(PARAM_PATTERN, sql);
+            parsedSql = new LexerParsedSql(sql);
             parsedSqlCache.put(sql, parsedSql);
         }
         return parsedSql;
     }
 
+    @Override
+    public ParsedSql expandSql(ParsedSql parsedSql, int[] elementCounts) {
+        // pad to power of two buckets so the number of distinct statements stays small
+        int[] bucketCounts = new int[elementCounts.length];
+        StringBuilder keyBuilder = new StringBuilder(parsedSql.getSql().length() + 4 * elementCounts.length);
+        keyBuilder.append(parsedSql.getSql());
+        for (int i = 0; i < elementCounts.length; i++) {
+            bucketCounts[i] = elementCounts[i] < 0 ? -1 : bucketCount(elementCounts[i]);
+            keyBuilder.append('\u0000').append(bucketCounts[i]);
+        }
+        String key = keyBuilder.toString();
+        ParsedSql expandedSql = parsedSqlCache.get(key);
+        if (expandedSql == null) {
+            expandedSql = new ExpandedParsedSql(parsedSql, bucketCounts);
+            parsedSqlCache.put(key, expandedSql);
+        }
+        return expandedSql;
+    }
+
+    public static int bucketCount(int elementCount) {
+        // an empty collection is bound as a single null
+        return elementCount <= 1 ? 1 : Integer.highestOneBit(elementCount - 1) << 1;
+    }
+
     @Override
     public MappingMetaData extractMetaData(ParsedSql parsedSql, PreparedStatement preparedStatement) {
         MappingMetaData mappingMetaData = preparedStatementMetaDataCache.get(parsedSql.getSql());
         if (mappingMetaData == null) {
+            int[] declaredTypes = declaredParameterTypes.get(parsedSql.getSql());
+            if (declaredTypes != null || !parameterMetaDataEnabled) {
+                String[] names = parsedSql.getParameterNames();
+                int[] sqlTypes;
+                if (declaredTypes != null) {
+                    sqlTypes = declaredTypes.clone();
+                } else {
+                    sqlTypes = new int[names.length];
+                    Arrays.fill(sqlTypes, MappingMetaData.UNKNOWN_SQL_TYPE);
+                }
+                mappingMetaData = new MappingMetaDataImpl(names.length, names, sqlTypes);
+                preparedStatementMetaDataCache.put(parsedSql.getSql(), mappingMetaData);
+                return mappingMetaData;
+            }
             try {
                 String[] parameterNames = parsedSql.getParameterNames();
                 ParameterMetaData metaData = preparedStatement.getParameterMetaData();
@@ -1,14 +1,29 @@
 package ca.pjer.sqlper.support;
 
-import ca.pjer.sqlper.ConnectionProvider;
-import ca.pjer.sqlper.MappingFactory;
-import ca.pjer.sqlper.Sqlper;
-import ca.pjer.sqlper.SqlperManager;
+import ca.pjer.sqlper.*;
+import ca.pjer.sqlper.support.cache.QueryResultCache;
 
-public class DefaultSqlperManager implements SqlperManager {
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DefaultSqlperManager implements SqlperManager, AutoCloseable {
 
     private final ConnectionProvider connectionProvider;
     private final MappingFactory mappingFactory;
+    private final List<SqlperListener> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<TransactionScope> transactionScopes = new ThreadLocal<>();
+
+    private int statementCacheSize;
+    private int fetchSize;
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+    private ExecutorService executorService;
+    // the default executor is shut down on close, one that was set belongs to the caller
+    private boolean defaultExecutorService;
+    private QueryResultCache queryResultCache;
 
     public DefaultSqlperManager(ConnectionProvider connectionProvider) {
         this(connectionProvider, new DefaultMappingFactory());
@@ -29,8 +44,213 @@ public class DefaultSqlperManager implements SqlperManager {
         return mappingFactory;
     }
 
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * The number of units of work run at once by the default executor, usually the size of the connection pool.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than zero");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return the executor of submitted units of work, by default a {@link SqlperExecutors#newBoundedExecutor} created on first use
+     */
+    public synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = SqlperExecutors.newBoundedExecutor(maxConcurrency);
+            defaultExecutorService = true;
+        }
+        return executorService;
+    }
+
+    public synchronized void setExecutorService(ExecutorService executorService) {
+        close();
+        this.executorService = executorService;
+        defaultExecutorService = false;
+    }
+
+    /**
+     * Shut down the default executor of submitted units of work, letting those already submitted complete.
+     * An executor given to {@link #setExecutorService(ExecutorService)} is left to its owner.
+     */
+    @Override
+    public synchronized void close() {
+        if (executorService != null && defaultExecutorService) {
+            executorService.shutdown();
+        }
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * A cache of query results shared by the sessions opened afterward, null (the default) for none.
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    @Override
+    public void addListener(SqlperListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(SqlperListener listener) {
+        listeners.remove(listener);
+    }
+
     @Override
     public Sqlper open() {
-        return new SqlperImpl(connectionProvider.getConnection(), mappingFactory);
+        TransactionScope transactionScope = transactionScopes.get();
+        if (transactionScope != null) {
+            return transactionScope.getNestedSqlper();
+        }
+        return openSqlper();
+    }
+
+    @Override
+    public <T> T transaction(SqlperCallback<T> callback) {
+        TransactionScope transactionScope = transactionScopes.get();
+        if (transactionScope != null) {
+            return transactionScope.executeNested(callback);
+        }
+        try (SqlperImpl sqlper = openSqlper()) {
+            transactionScope = new TransactionScope(sqlper);
+            transactionScopes.set(transactionScope);
+            try {
+                return transactionScope.execute(callback);
+            } finally {
+                transactionScopes.remove();
+            }
+        }
+    }
+
+    private SqlperImpl openSqlper() {
+        Connection connection = connectionProvider.getConnection();
+        // a pooled connection keeps its own statement cache across sessions
+        StatementCache statementCache = unwrapStatementCache(connection);
+        SqlperImpl sqlper;
+        if (statementCache != null) {
+            sqlper = new SqlperImpl(connection, mappingFactory, statementCache, false);
+        } else {
+            sqlper = new SqlperImpl(connection, mappingFactory, statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null);
+        }
+        sqlper.setFetchSize(fetchSize);
+        sqlper.setQueryResultCache(queryResultCache);
+        // no listener at all when there is none, so sessions do not even measure
+        SqlperListener[] listeners = this.listeners.toArray(new SqlperListener[0]);
+        if (listeners.length == 1) {
+            sqlper.setListener(listeners[0]);
+        } else if (listeners.length > 1) {
+            sqlper.setListener(new CompositeListener(listeners));
+        }
+        return sqlper;
+    }
+
+    private StatementCache unwrapStatementCache(Connection connection) {
+        try {
+            return connection.isWrapperFor(StatementCache.class) ? connection.unwrap(StatementCache.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public <T> Future<T> submit(SqlperCallback<T> callback) {
+        SqlperTask<T> task = new SqlperTask<>(new SqlperWork<>(callback));
+        getExecutorService().execute(task);
+        return task;
+    }
+
+    private class SqlperWork<T> implements Callable<T> {
+
+        private final SqlperCallback<T> callback;
+        private volatile Sqlper sqlper;
+
+        private SqlperWork(SqlperCallback<T> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public T call() throws Exception {
+            try (Sqlper sqlper = open()) {
+                this.sqlper = sqlper;
+                try {
+                    return callback.call(sqlper);
+                } finally {
+                    this.sqlper = null;
+                }
+            }
+        }
+    }
+
+    private static class SqlperTask<T> extends FutureTask<T> {
+
+        private final SqlperWork<T> work;
+
+        private SqlperTask(SqlperWork<T> work) {
+            super(work);
+            this.work = work;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Sqlper sqlper = work.sqlper;
+            if (cancelled && mayInterruptIfRunning && sqlper != null) {
+                try {
+                    sqlper.cancel();
+                } catch (SqlperException e) {
+                    // the future is cancelled anyway
+                    Logger.getLogger(DefaultSqlperManager.class.getName()).log(Level.FINE, "Unable to cancel statement", e);
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    private static class CompositeListener implements SqlperListener {
+
+        private final SqlperListener[] listeners;
+
+        private CompositeListener(SqlperListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void statementExecuted(StatementEvent event) {
+            for (SqlperListener listener : listeners) {
+                try {
+                    listener.statementExecuted(event);
+                } catch (RuntimeException e) {
+                    // do not let it keep the next listeners from the event
+                    Logger.getLogger(DefaultSqlperManager.class.getName()).log(Level.WARNING, "Listener failed on " + event, e);
+                }
+            }
+        }
     }
 }
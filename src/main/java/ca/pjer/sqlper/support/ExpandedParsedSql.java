@@ -0,0 +1,79 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.ParsedSql;
+
+/**
+ * A {@link ParsedSql} where some parameters are expanded to a list of placeholders (?, ?, ...),
+ * typically for an IN list bound to a collection.
+ * Expanded parameters are named name[0], name[1], ... so a mapper can bind each element.
+ */
+public class ExpandedParsedSql implements ParsedSql {
+
+    private final String sql;
+    private final String[] parameterNames;
+    private final int[] parameterPositions;
+
+    /**
+     * @param elementCounts the number of placeholders of each parameter of parsedSql, or -1 to keep it as is
+     */
+    public ExpandedParsedSql(ParsedSql parsedSql, int[] elementCounts) {
+
+        String sql = parsedSql.getSql();
+        String[] names = parsedSql.getParameterNames();
+        int[] positions = parsedSql.getParameterPositions();
+        if (elementCounts.length != names.length) {
+            throw new IllegalArgumentException("Expected " + names.length + " element counts, got " + elementCounts.length);
+        }
+
+        int count = 0;
+        for (int elementCount : elementCounts) {
+            if (elementCount == 0) {
+                throw new IllegalArgumentException("An expanded parameter needs at least one element");
+            }
+            count += elementCount < 0 ? 1 : elementCount;
+        }
+
+        StringBuilder sqlBuilder = new StringBuilder(sql.length() + 3 * count);
+        parameterNames = new String[count];
+        parameterPositions = new int[count];
+
+        int copied = 0;
+        int j = 0;
+        for (int i = 0; i < names.length; i++) {
+            sqlBuilder.append(sql, copied, positions[i]);
+            if (elementCounts[i] < 0) {
+                parameterNames[j] = names[i];
+                parameterPositions[j++] = sqlBuilder.length();
+                sqlBuilder.append('?');
+            } else {
+                for (int k = 0; k < elementCounts[i]; k++) {
+                    if (k > 0) {
+                        sqlBuilder.append(", ");
+                    }
+                    parameterNames[j] = names[i] + '[' + k + ']';
+                    parameterPositions[j++] = sqlBuilder.length();
+                    sqlBuilder.append('?');
+                }
+            }
+            copied = positions[i] + 1;
+        }
+        sqlBuilder.append(sql, copied, sql.length());
+
+        this.sql = sqlBuilder.toString();
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    @Override
+    public int[] getParameterPositions() {
+        return parameterPositions;
+    }
+}
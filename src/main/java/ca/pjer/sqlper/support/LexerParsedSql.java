@@ -0,0 +1,185 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.ParsedSql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses named parameters (:name) and positional parameters (?) in a single pass over the statement.
+ * Quoted literals and identifiers ('...', "...", `...`, $tag$...$tag$),
+ * line and block comments and :: casts are copied untouched.
+ */
+public class LexerParsedSql implements ParsedSql {
+
+    private final String sql;
+    private final String[] parameterNames;
+    private final int[] parameterPositions;
+
+    public LexerParsedSql(String sql) {
+
+        int length = sql.length();
+        StringBuilder sqlBuilder = null;
+        List<String> names = new ArrayList<>(10);
+        int[] positions = new int[10];
+
+        // start of the segment not yet copied into sqlBuilder
+        int copied = 0;
+
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            switch (c) {
+                case '\'':
+                case '"':
+                case '`':
+                    i = skipQuoted(sql, i, c);
+                    break;
+                case '-':
+                    if (i + 1 < length && sql.charAt(i + 1) == '-') {
+                        i = skipLineComment(sql, i);
+                    } else {
+                        i++;
+                    }
+                    break;
+                case '/':
+                    if (i + 1 < length && sql.charAt(i + 1) == '*') {
+                        i = skipBlockComment(sql, i);
+                    } else {
+                        i++;
+                    }
+                    break;
+                case '$':
+                    // a $ inside an identifier (col$x$) does not open a dollar quote
+                    if (i > 0 && isIdentifierPart(sql.charAt(i - 1))) {
+                        i++;
+                    } else {
+                        i = skipDollarQuoted(sql, i);
+                    }
+                    break;
+                case '?':
+                    positions = add(positions, names.size(), (sqlBuilder != null ? sqlBuilder.length() : 0) + i - copied);
+                    names.add(null);
+                    i++;
+                    break;
+                case ':':
+                    if (i + 1 < length && sql.charAt(i + 1) == ':') {
+                        // a cast, skip all its colons
+                        i += 2;
+                        while (i < length && sql.charAt(i) == ':') {
+                            i++;
+                        }
+                    } else if (i + 1 < length && isNameStart(sql.charAt(i + 1))) {
+                        int end = i + 2;
+                        while (end < length && isNamePart(sql.charAt(end))) {
+                            end++;
+                        }
+                        if (sqlBuilder == null) {
+                            sqlBuilder = new StringBuilder(length);
+                        }
+                        sqlBuilder.append(sql, copied, i);
+                        positions = add(positions, names.size(), sqlBuilder.length());
+                        names.add(sql.substring(i + 1, end));
+                        sqlBuilder.append('?');
+                        copied = end;
+                        i = end;
+                    } else {
+                        i++;
+                    }
+                    break;
+                default:
+                    i++;
+            }
+        }
+
+        if (sqlBuilder != null) {
+            sqlBuilder.append(sql, copied, length);
+            this.sql = sqlBuilder.toString();
+        } else {
+            this.sql = sql;
+        }
+        parameterNames = names.toArray(new String[names.size()]);
+        parameterPositions = Arrays.copyOf(positions, names.size());
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    @Override
+    public int[] getParameterPositions() {
+        return parameterPositions;
+    }
+
+    private static int[] add(int[] positions, int index, int position) {
+        if (index == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[index] = position;
+        return positions;
+    }
+
+    private static boolean isNameStart(char c) {
+        return c == '_' || Character.isLetter(c);
+    }
+
+    private static boolean isNamePart(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return c == '$' || isNamePart(c);
+    }
+
+    private static int skipQuoted(String sql, int i, char quote) {
+        int length = sql.length();
+        i++;
+        while (i < length) {
+            if (sql.charAt(i) == quote) {
+                // a doubled quote is an escaped quote
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private static int skipLineComment(String sql, int i) {
+        int end = sql.indexOf('\n', i + 2);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipBlockComment(String sql, int i) {
+        int end = sql.indexOf("*/", i + 2);
+        return end < 0 ? sql.length() : end + 2;
+    }
+
+    private static int skipDollarQuoted(String sql, int i) {
+        // $tag$ ... $tag$ where tag is empty or an identifier (so $1 is not a dollar quote)
+        int length = sql.length();
+        int end = i + 1;
+        if (end < length && isNameStart(sql.charAt(end))) {
+            end++;
+            while (end < length && isNamePart(sql.charAt(end))) {
+                end++;
+            }
+        }
+        if (end >= length || sql.charAt(end) != '$') {
+            return i + 1;
+        }
+        String tag = sql.substring(i, end + 1);
+        int close = sql.indexOf(tag, end + 1);
+        return close < 0 ? length : close + tag.length();
+    }
+}
@@ -2,16 +2,31 @@ package ca.pjer.sqlper.support;
 
 import ca.pjer.sqlper.MappingMetaData;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 public class MappingMetaDataImpl implements MappingMetaData {
 
     private final int count;
     private final String[] names;
     private final int[] sqlTypes;
+    // the SQL types inferred for the parameters of unknown type, kept aside since the meta data is shared
+    private final AtomicIntegerArray inferredSqlTypes;
 
     public MappingMetaDataImpl(int count, String[] names, int[] sqlTypes) {
         this.count = count;
         this.names = names;
         this.sqlTypes = sqlTypes;
+        AtomicIntegerArray inferredSqlTypes = null;
+        for (int sqlType : sqlTypes) {
+            if (sqlType == UNKNOWN_SQL_TYPE) {
+                inferredSqlTypes = new AtomicIntegerArray(sqlTypes.length);
+                for (int i = 0; i < sqlTypes.length; i++) {
+                    inferredSqlTypes.set(i, UNKNOWN_SQL_TYPE);
+                }
+                break;
+            }
+        }
+        this.inferredSqlTypes = inferredSqlTypes;
     }
 
     @Override
@@ -28,4 +43,17 @@ public class MappingMetaDataImpl implements MappingMetaData {
     public int[] getSqlTypes() {
         return sqlTypes;
     }
+
+    /**
+     * @return the SQL type inferred for a parameter of unknown type, or {@link #UNKNOWN_SQL_TYPE} if not inferred yet
+     */
+    public int getInferredSqlType(int index) {
+        return inferredSqlTypes != null ? inferredSqlTypes.get(index) : UNKNOWN_SQL_TYPE;
+    }
+
+    public void setInferredSqlType(int index, int sqlType) {
+        if (inferredSqlTypes != null) {
+            inferredSqlTypes.set(index, sqlType);
+        }
+    }
 }
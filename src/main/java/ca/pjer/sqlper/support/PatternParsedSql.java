@@ -3,6 +3,7 @@ package ca.pjer.sqlper.support;
 import ca.pjer.sqlper.ParsedSql;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -11,12 +12,14 @@ public class PatternParsedSql implements ParsedSql {
 
     private String sql;
     private String[] parameterNames;
+    private int[] parameterPositions;
 
     public PatternParsedSql(Pattern pattern, String sql) {
 
         StringBuilder sqlBuilder = new StringBuilder();
         int i = 0;
         List<String> names = new ArrayList<>(10);
+        int[] positions = new int[10];
 
         Matcher matcher = pattern.matcher(sql);
         while (matcher.find()) {
@@ -25,9 +28,13 @@ public class PatternParsedSql implements ParsedSql {
             int nameGroup = Math.max(matcher.groupCount(), 0);
 
             String name = matcher.group(nameGroup);
-            names.add(name);
 
             sqlBuilder.append(sql.substring(i, matcher.start(paramGroup)));
+            if (names.size() == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[names.size()] = sqlBuilder.length();
+            names.add(name);
             sqlBuilder.append("?");
             i = matcher.end(paramGroup);
         }
@@ -36,6 +43,7 @@ public class PatternParsedSql implements ParsedSql {
 
         this.sql = sqlBuilder.toString();
         parameterNames = names.toArray(new String[names.size()]);
+        parameterPositions = Arrays.copyOf(positions, names.size());
     }
 
     @Override
@@ -47,4 +55,9 @@ public class PatternParsedSql implements ParsedSql {
     public String[] getParameterNames() {
         return parameterNames;
     }
+
+    @Override
+    public int[] getParameterPositions() {
+        return parameterPositions;
+    }
 }
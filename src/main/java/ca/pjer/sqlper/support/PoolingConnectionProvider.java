@@ -0,0 +1,590 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.ConnectionProvider;
+import ca.pjer.sqlper.SqlperException;
+
+import javax.sql.DataSource;
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small connection pool over a {@link DataSource}.
+ * Closing a borrowed connection gives it back to the pool, rolled back, in auto commit, and with the
+ * isolation, read only, catalog, schema and holdability restored if the borrower changed them.
+ * Statements are wrapped so their {@link Statement#getConnection()} is the borrowed connection, not the physical one.
+ * Their result sets are not, so rows are read without a proxy: {@link ResultSet#getStatement()} is the physical statement.
+ * Each physical connection keeps its own {@link StatementCache} (when statementCacheSize is greater than zero),
+ * exposed through {@link Connection#unwrap(Class)} so statements are reused across sessions.
+ */
+public class PoolingConnectionProvider implements ConnectionProvider, AutoCloseable {
+
+    private static final Constructor<?> PROXY_CONSTRUCTOR = getProxyConstructor(Connection.class);
+    private static final Constructor<?> STATEMENT_PROXY_CONSTRUCTOR = getProxyConstructor(Statement.class);
+    private static final Constructor<?> PREPARED_STATEMENT_PROXY_CONSTRUCTOR = getProxyConstructor(PreparedStatement.class);
+    private static final Constructor<?> CALLABLE_STATEMENT_PROXY_CONSTRUCTOR = getProxyConstructor(CallableStatement.class);
+
+    private static Constructor<?> getProxyConstructor(Class<?> type) {
+        try {
+            return Proxy.getProxyClass(PoolingConnectionProvider.class.getClassLoader(), type).getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final Semaphore permits;
+
+    // most recently returned first, so hot connections (and their statements) are reused
+    private final ConcurrentLinkedDeque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile int minSize;
+    private volatile long borrowTimeout = 30000;
+    private volatile long maxIdleTime = 600000;
+    private volatile long validationInterval = 5000;
+    private volatile int validationTimeout = 5;
+    private volatile int statementCacheSize;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTime = new AtomicLong();
+    private final AtomicLong maxBorrowTime = new AtomicLong();
+    private final AtomicLong borrowTimeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+
+    // read without the lock first, once started
+    private volatile ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    public PoolingConnectionProvider(DataSource dataSource, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        permits = new Semaphore(maxSize);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Idle connections are not evicted below minSize, and the pool is filled up to it by {@link #evict()}.
+     */
+    public void setMinSize(int minSize) {
+        if (minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("minSize must be between zero and maxSize");
+        }
+        this.minSize = minSize;
+    }
+
+    public long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * @param borrowTimeout milliseconds to wait for a connection when maxSize are borrowed
+     */
+    public void setBorrowTimeout(long borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * @param maxIdleTime milliseconds after which an idle connection is evicted, 0 to never evict
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    /**
+     * @param validationInterval milliseconds a connection can stay idle before it is validated on borrow, 0 to always validate
+     */
+    public void setValidationInterval(long validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    public int getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    /**
+     * @param validationTimeout seconds given to {@link Connection#isValid(int)}
+     */
+    public void setValidationTimeout(int validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * The size of the statement cache of each physical connection created afterward, 0 for none.
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    @Override
+    public Connection getConnection() {
+        if (closed) {
+            throw new SqlperException("Connection pool is closed");
+        }
+        startEvictor();
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire() && !permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                borrowTimeoutCount.incrementAndGet();
+                throw new SqlperException("Unable to get connection from pool, all " + maxSize + " are in use after " + borrowTimeout + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SqlperException("Interrupted while waiting for a connection from pool", e);
+        }
+        try {
+            PooledConnection pooledConnection;
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                if (validate(pooledConnection)) {
+                    break;
+                }
+                validationFailureCount.incrementAndGet();
+                destroy(pooledConnection);
+            }
+            if (pooledConnection == null) {
+                pooledConnection = create();
+            }
+            Connection connection = pooledConnection.borrow();
+            long elapsed = System.nanoTime() - start;
+            borrowCount.incrementAndGet();
+            borrowTime.addAndGet(elapsed);
+            long max;
+            while (elapsed > (max = maxBorrowTime.get()) && !maxBorrowTime.compareAndSet(max, elapsed)) {
+                // retry
+            }
+            return connection;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean validate(PooledConnection pooledConnection) {
+        if (System.currentTimeMillis() - pooledConnection.lastUsed < validationInterval) {
+            return true;
+        }
+        try {
+            return pooledConnection.connection.isValid(validationTimeout);
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Unable to validate pooled connection", e);
+            return false;
+        }
+    }
+
+    private PooledConnection create() {
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to get connection from dataSource", e);
+        }
+        size.incrementAndGet();
+        createdCount.incrementAndGet();
+        int statementCacheSize = this.statementCacheSize;
+        return new PooledConnection(connection, statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null);
+    }
+
+    private void destroy(PooledConnection pooledConnection) {
+        size.decrementAndGet();
+        destroyedCount.incrementAndGet();
+        try {
+            if (pooledConnection.statementCache != null) {
+                pooledConnection.statementCache.close();
+            }
+        } finally {
+            try {
+                pooledConnection.connection.close();
+            } catch (SQLException e) {
+                logger.log(Level.FINE, "Unable to close pooled connection", e);
+            }
+        }
+    }
+
+    private void giveBack(PooledConnection pooledConnection) {
+        try {
+            boolean reusable = !closed;
+            if (reusable) {
+                try {
+                    pooledConnection.reset();
+                } catch (SQLException e) {
+                    logger.log(Level.FINE, "Unable to reset pooled connection", e);
+                    reusable = false;
+                }
+            }
+            if (reusable) {
+                pooledConnection.lastUsed = System.currentTimeMillis();
+                idleConnections.offerFirst(pooledConnection);
+            } else {
+                destroy(pooledConnection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close the connections idle for more than maxIdleTime (keeping minSize), then fill the pool up to minSize.
+     * Called periodically once the pool is in use.
+     */
+    public void evict() {
+        long maxIdleTime = this.maxIdleTime;
+        if (maxIdleTime > 0) {
+            long now = System.currentTimeMillis();
+            // the oldest are at the end
+            Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+            while (iterator.hasNext() && size.get() > minSize) {
+                PooledConnection pooledConnection = iterator.next();
+                if (now - pooledConnection.lastUsed > maxIdleTime && idleConnections.removeLastOccurrence(pooledConnection)) {
+                    destroy(pooledConnection);
+                }
+            }
+        }
+        while (!closed && size.get() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pooledConnection = create();
+                pooledConnection.lastUsed = System.currentTimeMillis();
+                idleConnections.offerLast(pooledConnection);
+            } catch (SqlperException e) {
+                logger.log(Level.WARNING, "Unable to fill connection pool", e);
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        synchronized (this) {
+            if (evictor != null || closed) {
+                return;
+            }
+            ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sqlper-pool-evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            long period = Math.max(Math.min(maxIdleTime > 0 ? maxIdleTime / 2 : 30000, 30000), 1000);
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        evict();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Unable to evict idle connections", e);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+            this.evictor = evictor;
+        }
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return the total nanoseconds spent waiting for, validating and creating connections on borrow
+     */
+    public long getBorrowTime() {
+        return borrowTime.get();
+    }
+
+    public long getMaxBorrowTime() {
+        return maxBorrowTime.get();
+    }
+
+    public long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    /**
+     * Close the idle connections, the borrowed ones are closed when given back.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (evictor != null) {
+                evictor.shutdownNow();
+            }
+        }
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            destroy(pooledConnection);
+        }
+    }
+
+    private class PooledConnection {
+
+        private final Connection connection;
+        private final StatementCache statementCache;
+        private volatile long lastUsed = System.currentTimeMillis();
+        // the last borrowed proxy, the connection of its statements (cached ones outlive their borrower)
+        private volatile Connection borrowed;
+
+        // the settings before the borrower changed them, null if unchanged
+        private Integer transactionIsolation;
+        private Boolean readOnly;
+        private Integer holdability;
+        // a catalog or schema may be null, so whether it was saved is tracked aside
+        private boolean catalogSaved;
+        private String catalog;
+        private boolean schemaSaved;
+        private String schema;
+
+        private PooledConnection(Connection connection, StatementCache statementCache) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+        }
+
+        private Connection borrow() {
+            try {
+                borrowed = (Connection) PROXY_CONSTRUCTOR.newInstance(new BorrowedConnection(this));
+                return borrowed;
+            } catch (ReflectiveOperationException e) {
+                throw new SqlperException("Unable to create pooled connection proxy", e);
+            }
+        }
+
+        /**
+         * Remember a setting before its first change by the borrower.
+         */
+        private void saveSetting(String setter) throws SQLException {
+            switch (setter) {
+                case "setTransactionIsolation":
+                    if (transactionIsolation == null) {
+                        transactionIsolation = connection.getTransactionIsolation();
+                    }
+                    break;
+                case "setReadOnly":
+                    if (readOnly == null) {
+                        readOnly = connection.isReadOnly();
+                    }
+                    break;
+                case "setCatalog":
+                    if (!catalogSaved) {
+                        catalog = connection.getCatalog();
+                        catalogSaved = true;
+                    }
+                    break;
+                case "setSchema":
+                    if (!schemaSaved) {
+                        schema = connection.getSchema();
+                        schemaSaved = true;
+                    }
+                    break;
+                case "setHoldability":
+                    if (holdability == null) {
+                        holdability = connection.getHoldability();
+                    }
+                    break;
+                default:
+            }
+        }
+
+        private void reset() throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (transactionIsolation != null) {
+                connection.setTransactionIsolation(transactionIsolation);
+                transactionIsolation = null;
+            }
+            if (readOnly != null) {
+                connection.setReadOnly(readOnly);
+                readOnly = null;
+            }
+            if (holdability != null) {
+                connection.setHoldability(holdability);
+                holdability = null;
+            }
+            if (catalogSaved) {
+                // a connection without catalog is not given one back
+                if (catalog != null) {
+                    connection.setCatalog(catalog);
+                }
+                catalogSaved = false;
+            }
+            if (schemaSaved) {
+                if (schema != null) {
+                    connection.setSchema(schema);
+                }
+                schemaSaved = false;
+            }
+        }
+    }
+
+    private class BorrowedConnection implements InvocationHandler {
+
+        private final PooledConnection pooledConnection;
+        private boolean closed;
+
+        private BorrowedConnection(PooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        giveBack(pooledConnection);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooledConnection.connection.isClosed();
+                case "isWrapperFor":
+                    if (args[0] == StatementCache.class) {
+                        return pooledConnection.statementCache != null;
+                    }
+                    break;
+                case "unwrap":
+                    if (args[0] == StatementCache.class && pooledConnection.statementCache != null) {
+                        return pooledConnection.statementCache;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooledConnection.connection + "]";
+                case "setTransactionIsolation":
+                case "setReadOnly":
+                case "setCatalog":
+                case "setSchema":
+                case "setHoldability":
+                    if (!closed) {
+                        pooledConnection.saveSetting(name);
+                    }
+                    break;
+                default:
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            Object result;
+            try {
+                result = method.invoke(pooledConnection.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                return wrapStatement(method.getReturnType(), (Statement) result);
+            }
+            return result;
+        }
+
+        private Statement wrapStatement(Class<?> type, Statement statement) {
+            Constructor<?> constructor;
+            if (type == CallableStatement.class) {
+                constructor = CALLABLE_STATEMENT_PROXY_CONSTRUCTOR;
+            } else if (type == PreparedStatement.class) {
+                constructor = PREPARED_STATEMENT_PROXY_CONSTRUCTOR;
+            } else {
+                constructor = STATEMENT_PROXY_CONSTRUCTOR;
+            }
+            try {
+                return (Statement) constructor.newInstance(new PooledStatement(pooledConnection, statement));
+            } catch (ReflectiveOperationException e) {
+                throw new SqlperException("Unable to create pooled statement proxy", e);
+            }
+        }
+    }
+
+    private static class PooledStatement implements InvocationHandler {
+
+        private final PooledConnection pooledConnection;
+        private final Statement statement;
+
+        private PooledStatement(PooledConnection pooledConnection, Statement statement) {
+            this.pooledConnection = pooledConnection;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return pooledConnection.borrowed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledStatement[" + statement + "]";
+                default:
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ca.pjer.sqlper.support;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for {@link DefaultSqlperManager#submit}.
+ * Each task holds a connection while it runs, so they should be bounded to the size of the connection pool.
+ */
+public class SqlperExecutors {
+
+    /**
+     * @return a pool of maxConcurrency daemon threads
+     */
+    public static ExecutorService newFixedThreadPool(int maxConcurrency) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(maxConcurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sqlper-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return true if virtual threads can be created, not only declared as a preview feature (as on JDK 19 and 20)
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            newVirtualThreadPerTaskExecutor().shutdown();
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return a virtual thread per task, with at most maxConcurrency tasks running at once
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor(int maxConcurrency) {
+        return new BoundedExecutorService(newVirtualThreadPerTaskExecutor(), maxConcurrency);
+    }
+
+    /**
+     * @return virtual threads if the runtime supports them, a fixed thread pool otherwise
+     */
+    public static ExecutorService newBoundedExecutor(int maxConcurrency) {
+        try {
+            return newVirtualThreadExecutor(maxConcurrency);
+        } catch (UnsupportedOperationException e) {
+            return newFixedThreadPool(maxConcurrency);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // no such method before JDK 19, and it throws when preview features are not enabled on JDK 19 and 20
+            throw new UnsupportedOperationException("Virtual threads are not supported by this runtime", e);
+        }
+    }
+
+    private static class BoundedExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService executorService;
+        private final Semaphore permits;
+
+        private BoundedExecutorService(ExecutorService executorService, int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be greater than zero");
+            }
+            this.executorService = executorService;
+            permits = new Semaphore(maxConcurrency, true);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            executorService.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executorService.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executorService.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executorService.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executorService.awaitTermination(timeout, unit);
+        }
+    }
+}
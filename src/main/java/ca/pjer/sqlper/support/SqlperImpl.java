@@ -1,28 +1,58 @@
 package ca.pjer.sqlper.support;
 
 import ca.pjer.sqlper.*;
+import ca.pjer.sqlper.support.cache.QueryResultCache;
+import ca.pjer.sqlper.support.mapper.ObjectMapper;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.sql.Statement;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class SqlperImpl implements Sqlper {
 
+    private static final String[] NO_RETURNING = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     private final Logger logger = Logger.getLogger(getClass().getName());
 
     private final Connection connection;
     private final MappingFactory mappingFactory;
+    private final StatementCache statementCache;
+    private final boolean closeStatementCache;
+    private final Set<ResultSetIterator> iterators = new LinkedHashSet<>();
+
+    private int fetchSize;
+    private SqlperListener listener;
+    private QueryResultCache queryResultCache;
+    // the statements run since the transaction began, to invalidate their results again once it ends
+    private final Set<String> pendingInvalidations = new LinkedHashSet<>();
+
+    // the statement in use, for cancel() from another thread
+    private volatile Statement executingStatement;
 
     public SqlperImpl(Connection connection, MappingFactory mappingFactory) {
+        this(connection, mappingFactory, null);
+    }
+
+    public SqlperImpl(Connection connection, MappingFactory mappingFactory, StatementCache statementCache) {
+        this(connection, mappingFactory, statementCache, true);
+    }
+
+    /**
+     * @param closeStatementCache false when the statement cache outlives this session, as one owned by a pooled connection
+     */
+    public SqlperImpl(Connection connection, MappingFactory mappingFactory, StatementCache statementCache, boolean closeStatementCache) {
         this.connection = connection;
         this.mappingFactory = mappingFactory;
+        this.statementCache = statementCache;
+        this.closeStatementCache = closeStatementCache;
     }
 
     @Override
@@ -30,12 +60,56 @@ public class SqlperImpl implements Sqlper {
         return connection;
     }
 
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public SqlperListener getListener() {
+        return listener;
+    }
+
+    public void setListener(SqlperListener listener) {
+        this.listener = listener;
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * The cache is neither read nor written while the connection is not in auto commit.
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
     @Override
     public int update(String sql) {
         ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            trace(parsedSql, null);
-            return preparedStatement.executeUpdate();
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                trace(parsedSql, null);
+                int count = preparedStatement.executeUpdate();
+                if (event != null) {
+                    event.executed();
+                    event.succeeded(count);
+                }
+                return count;
+            } finally {
+                invalidateResults(parsedSql);
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
+            }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
         }
@@ -44,13 +118,29 @@ public class SqlperImpl implements Sqlper {
     @Override
     public int update(String sql, Object parameters) {
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
-        ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
-            Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
-            parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
-            trace(parsedSql, parameters);
-            return preparedStatement.executeUpdate();
+        Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
+        ParsedSql parsedSql = expandSql(mappingFactory.parseSql(sql), parametersMapper, parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                if (event != null) {
+                    event.bound();
+                }
+                trace(parsedSql, parameters);
+                int count = preparedStatement.executeUpdate();
+                if (event != null) {
+                    event.executed();
+                    event.succeeded(count);
+                }
+                return count;
+            } finally {
+                invalidateResults(parsedSql);
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
+            }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
         }
@@ -58,21 +148,116 @@ public class SqlperImpl implements Sqlper {
 
     @Override
     public int update(String sql, Object parameters, String... returning) {
+        MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
+        Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
+        ParsedSql parsedSql = expandSql(mappingFactory.parseSql(sql), parametersMapper, parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, returning, event);
+            try {
+                MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                if (event != null) {
+                    event.bound();
+                }
+                trace(parsedSql, parameters);
+                int count = preparedStatement.executeUpdate();
+                if (event != null) {
+                    event.executed();
+                }
+                try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+                    if (resultSet.next()) {
+                        MappingMetaData resultSetMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                        parametersMapper.map(mapperRegistry, resultSet, resultSetMetaData, 0, parameters.getClass(), parameters);
+                    }
+                }
+                if (event != null) {
+                    event.mapped();
+                    event.succeeded(count);
+                }
+                return count;
+            } finally {
+                invalidateResults(parsedSql);
+                endEvent(event);
+                releaseStatement(parsedSql, returning, preparedStatement);
+            }
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
+        }
+    }
+
+    @Override
+    public int[] updateBatch(String sql, Iterable<?> parameters) {
+        return updateBatch(sql, parameters, DEFAULT_BATCH_SIZE, NO_RETURNING);
+    }
+
+    @Override
+    public int[] updateBatch(String sql, Iterable<?> parameters, int batchSize) {
+        return updateBatch(sql, parameters, batchSize, NO_RETURNING);
+    }
+
+    @Override
+    public int[] updateBatch(String sql, Iterable<?> parameters, int batchSize, String... returning) {
+        return updateBatch(sql, parameters, batchSize, returning, null);
+    }
+
+    @Override
+    public <T> int[] updateBatch(String sql, Iterable<T> parameters, int batchSize, Mapper<T> parametersMapper) {
+        if (parametersMapper == null) {
+            throw new IllegalArgumentException("parametersMapper must not be null");
+        }
+        return updateBatch(sql, parameters, batchSize, NO_RETURNING, parametersMapper);
+    }
+
+    /**
+     * @param mapper the mapper of every element, or null to find the one of each element type
+     */
+    private int[] updateBatch(String sql, Iterable<?> parameters, int batchSize, String[] returning, Mapper mapper) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than zero");
+        }
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
         ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql(), returning)) {
-            MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
-            Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
-            parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
-            trace(parsedSql, parameters);
-            int count = preparedStatement.executeUpdate();
-            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
-                if (resultSet.next()) {
-                    MappingMetaData resultSetMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
-                    parametersMapper.map(mapperRegistry, resultSet, resultSetMetaData, 0, parameters.getClass(), parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, returning, event);
+            try {
+                MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                List<Object> batch = new ArrayList<>(Math.min(batchSize, DEFAULT_BATCH_SIZE));
+                UpdateCounts counts = new UpdateCounts();
+                Class parametersType = null;
+                Mapper parametersMapper = mapper;
+                int index = 0;
+                for (Object object : parameters) {
+                    if (object == null) {
+                        throw new IllegalArgumentException("Batch parameters at index " + index + " are null");
+                    }
+                    index++;
+                    if (object.getClass() != parametersType) {
+                        parametersType = object.getClass();
+                        if (mapper == null) {
+                            parametersMapper = mapperRegistry.find(parametersType);
+                        }
+                    }
+                    parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parametersType, object);
+                    preparedStatement.addBatch();
+                    batch.add(object);
+                    if (batch.size() == batchSize) {
+                        counts.add(executeBatch(parsedSql, preparedStatement, batch, returning, event));
+                    }
                 }
+                if (!batch.isEmpty()) {
+                    counts.add(executeBatch(parsedSql, preparedStatement, batch, returning, event));
+                }
+                if (event != null) {
+                    event.succeeded(counts.getRowCount());
+                }
+                return counts.toArray();
+            } finally {
+                invalidateResults(parsedSql);
+                endEvent(event);
+                releaseStatement(parsedSql, returning, preparedStatement);
             }
-            return count;
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
         }
@@ -82,17 +267,35 @@ public class SqlperImpl implements Sqlper {
     public <T> List<T> query(String sql, Class<T> resultsType) {
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
         ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            trace(parsedSql, null);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
-                Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
-                // TODO: find a good initial capacity ? maybe cache the last size for resultsType ?
-                List<T> results = new ArrayList<>();
-                while (resultSet.next()) {
-                    results.add(resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null));
+        QueryResultCache.Lookup lookup = lookupResult(parsedSql.getSql(), NO_VALUES, resultsType, false);
+        if (lookup != null && lookup.isHit()) {
+            return (List<T>) lookup.getValue();
+        }
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                trace(parsedSql, null);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
+                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                    Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
+                    // TODO: find a good initial capacity ? maybe cache the last size for resultsType ?
+                    List<T> results = new ArrayList<>();
+                    while (resultSet.next()) {
+                        results.add(resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null));
+                    }
+                    if (event != null) {
+                        event.mapped();
+                        event.succeeded(results.size());
+                    }
+                    return lookup != null ? (List<T>) lookup.put(results) : results;
                 }
-                return results;
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
             }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
@@ -102,21 +305,43 @@ public class SqlperImpl implements Sqlper {
     @Override
     public <T> List<T> query(String sql, Object parameters, Class<T> resultsType) {
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
-        ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
-            Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
-            parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
-            trace(parsedSql, parameters);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
-                Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
-                // TODO: find a good initial capacity ? maybe cache the last size for resultsType ?
-                List<T> results = new ArrayList<>();
-                while (resultSet.next()) {
-                    results.add(resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null));
+        Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
+        ParsedSql unexpandedSql = mappingFactory.parseSql(sql);
+        ParsedSql parsedSql = expandSql(unexpandedSql, parametersMapper, parameters);
+        QueryResultCache.Lookup lookup = lookupResult(parsedSql.getSql(), unexpandedSql.getParameterNames(), parametersMapper, parameters, resultsType, false);
+        if (lookup != null && lookup.isHit()) {
+            return (List<T>) lookup.getValue();
+        }
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                if (event != null) {
+                    event.bound();
+                }
+                trace(parsedSql, parameters);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
+                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                    Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
+                    // TODO: find a good initial capacity ? maybe cache the last size for resultsType ?
+                    List<T> results = new ArrayList<>();
+                    while (resultSet.next()) {
+                        results.add(resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null));
+                    }
+                    if (event != null) {
+                        event.mapped();
+                        event.succeeded(results.size());
+                    }
+                    return lookup != null ? (List<T>) lookup.put(results) : results;
                 }
-                return results;
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
             }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
@@ -127,19 +352,40 @@ public class SqlperImpl implements Sqlper {
     public <T> T queryOne(String sql, Class<T> resultsType) {
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
         ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            trace(parsedSql, null);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                if (resultSet.next()) {
-                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
-                    Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
-                    T result = resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null);
+        QueryResultCache.Lookup lookup = lookupResult(parsedSql.getSql(), NO_VALUES, resultsType, true);
+        if (lookup != null && lookup.isHit()) {
+            return (T) lookup.getValue();
+        }
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                trace(parsedSql, null);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
                     if (resultSet.next()) {
-                        throw new SqlperException("More than one row returned from a queryOne");
+                        MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                        Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
+                        T result = resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null);
+                        if (resultSet.next()) {
+                            throw new SqlperException("More than one row returned from a queryOne");
+                        }
+                        if (event != null) {
+                            event.mapped();
+                            event.succeeded(1);
+                        }
+                        return lookup != null ? (T) lookup.put(result) : result;
+                    }
+                    if (event != null) {
+                        event.succeeded(0);
                     }
-                    return result;
+                    return lookup != null ? (T) lookup.put(null) : null;
                 }
-                return null;
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
             }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
@@ -149,23 +395,48 @@ public class SqlperImpl implements Sqlper {
     @Override
     public <T> T queryOne(String sql, Object parameters, Class<T> resultsType) {
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
-        ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
-            Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
-            parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
-            trace(parsedSql, parameters);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                if (resultSet.next()) {
-                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
-                    Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
-                    T result = resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null);
+        Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
+        ParsedSql unexpandedSql = mappingFactory.parseSql(sql);
+        ParsedSql parsedSql = expandSql(unexpandedSql, parametersMapper, parameters);
+        QueryResultCache.Lookup lookup = lookupResult(parsedSql.getSql(), unexpandedSql.getParameterNames(), parametersMapper, parameters, resultsType, true);
+        if (lookup != null && lookup.isHit()) {
+            return (T) lookup.getValue();
+        }
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                if (event != null) {
+                    event.bound();
+                }
+                trace(parsedSql, parameters);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
                     if (resultSet.next()) {
-                        throw new SqlperException("More than one row returned from a queryOne");
+                        MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                        Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
+                        T result = resultsMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, resultsType, null);
+                        if (resultSet.next()) {
+                            throw new SqlperException("More than one row returned from a queryOne");
+                        }
+                        if (event != null) {
+                            event.mapped();
+                            event.succeeded(1);
+                        }
+                        return lookup != null ? (T) lookup.put(result) : result;
                     }
-                    return result;
+                    if (event != null) {
+                        event.succeeded(0);
+                    }
+                    return lookup != null ? (T) lookup.put(null) : null;
                 }
-                return null;
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
             }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
@@ -175,34 +446,441 @@ public class SqlperImpl implements Sqlper {
     @Override
     public void queryOne(String sql, Object parameters) {
         MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
-        ParsedSql parsedSql = mappingFactory.parseSql(sql);
-        try (PreparedStatement preparedStatement = connection.prepareStatement(parsedSql.getSql())) {
-            MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
-            Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
-            parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
-            trace(parsedSql, parameters);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                if (resultSet.next()) {
-                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
-                    parametersMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, parameters.getClass(), parameters);
+        Mapper parametersMapper = mapperRegistry.find(parameters.getClass());
+        ParsedSql parsedSql = expandSql(mappingFactory.parseSql(sql), parametersMapper, parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            try {
+                MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                if (event != null) {
+                    event.bound();
+                }
+                trace(parsedSql, parameters);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
                     if (resultSet.next()) {
-                        throw new SqlperException("More than one row returned from queryOne");
+                        MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                        parametersMapper.map(mapperRegistry, resultSet, resultsMetaData, 0, parameters.getClass(), parameters);
+                        if (resultSet.next()) {
+                            throw new SqlperException("More than one row returned from queryOne");
+                        }
+                        if (event != null) {
+                            event.mapped();
+                            event.succeeded(1);
+                        }
+                    } else {
+                        throw new SqlperException("No row returned from void queryOne");
+                    }
+                }
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement);
+            }
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
+        }
+    }
+
+    @Override
+    public <T> ResultIterator<T> iterate(String sql, Class<T> resultsType) {
+        return iterate(sql, null, resultsType);
+    }
+
+    @Override
+    public <T> ResultIterator<T> iterate(String sql, Object parameters, Class<T> resultsType) {
+        MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
+        Mapper parametersMapper = parameters != null ? mapperRegistry.find(parameters.getClass()) : null;
+        ParsedSql parsedSql = expandSql(mappingFactory.parseSql(sql), parametersMapper, parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            int restoreFetchSize = -1;
+            ResultSet resultSet = null;
+            try {
+                if (parameters != null) {
+                    MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                    parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                    if (event != null) {
+                        event.bound();
+                    }
+                }
+                restoreFetchSize = applyFetchSize(preparedStatement);
+                trace(parsedSql, parameters);
+                resultSet = preparedStatement.executeQuery();
+                if (event != null) {
+                    event.executed();
+                }
+                MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                Mapper<T> resultsMapper = mapperRegistry.find(resultsType);
+                ResultSetIterator<T> iterator = new ResultSetIterator<>(parsedSql, preparedStatement, restoreFetchSize, resultSet, resultsMetaData, resultsMapper, resultsType, event);
+                iterators.add(iterator);
+                return iterator;
+            } catch (SQLException | RuntimeException e) {
+                endEvent(event);
+                try {
+                    if (resultSet != null) {
+                        resultSet.close();
+                    }
+                } finally {
+                    releaseStatement(parsedSql, NO_RETURNING, preparedStatement, restoreFetchSize);
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
+        }
+    }
+
+    @Override
+    public ColumnarResult queryColumns(String sql) {
+        return queryColumns(sql, null);
+    }
+
+    @Override
+    public ColumnarResult queryColumns(String sql, Object parameters) {
+        MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
+        Mapper parametersMapper = parameters != null ? mapperRegistry.find(parameters.getClass()) : null;
+        ParsedSql parsedSql = expandSql(mappingFactory.parseSql(sql), parametersMapper, parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            int restoreFetchSize = -1;
+            try {
+                if (parameters != null) {
+                    MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                    parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                    if (event != null) {
+                        event.bound();
+                    }
+                }
+                restoreFetchSize = applyFetchSize(preparedStatement);
+                trace(parsedSql, parameters);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
+                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                    ColumnarResultImpl results = new ColumnarResultImpl(resultsMetaData, fetchSize);
+                    while (resultSet.next()) {
+                        results.read(resultSet);
+                    }
+                    results.trim();
+                    if (event != null) {
+                        event.mapped();
+                        event.succeeded(results.getRowCount());
                     }
-                } else {
-                    throw new SqlperException("No row returned from void queryOne");
+                    return results;
                 }
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement, restoreFetchSize);
             }
         } catch (SQLException e) {
             throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
         }
     }
 
+    @Override
+    public <R> R collect(String sql, RowCollector<R> collector) {
+        return collect(sql, null, collector);
+    }
+
+    @Override
+    public <R> R collect(String sql, Object parameters, RowCollector<R> collector) {
+        MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
+        Mapper parametersMapper = parameters != null ? mapperRegistry.find(parameters.getClass()) : null;
+        ParsedSql parsedSql = expandSql(mappingFactory.parseSql(sql), parametersMapper, parameters);
+        StatementEventImpl event = startEvent(parsedSql);
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, NO_RETURNING, event);
+            int restoreFetchSize = -1;
+            try {
+                if (parameters != null) {
+                    MappingMetaData parametersMetaData = mappingFactory.extractMetaData(parsedSql, preparedStatement);
+                    parametersMapper.map(mapperRegistry, preparedStatement, parametersMetaData, 0, parameters.getClass(), parameters);
+                    if (event != null) {
+                        event.bound();
+                    }
+                }
+                restoreFetchSize = applyFetchSize(preparedStatement);
+                trace(parsedSql, parameters);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (event != null) {
+                        event.executed();
+                    }
+                    MappingMetaData resultsMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                    if (collector instanceof StartingRowCollector) {
+                        ((StartingRowCollector) collector).start(mapperRegistry, resultsMetaData);
+                    }
+                    long rowCount = 0;
+                    while (resultSet.next()) {
+                        collector.collect(mapperRegistry, resultSet, resultsMetaData);
+                        rowCount++;
+                    }
+                    if (event != null) {
+                        event.mapped();
+                        event.succeeded(rowCount);
+                    }
+                    return collector.getResult();
+                }
+            } finally {
+                endEvent(event);
+                releaseStatement(parsedSql, NO_RETURNING, preparedStatement, restoreFetchSize);
+            }
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to prepare statement: " + parsedSql.getSql(), e);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        Statement statement = executingStatement;
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                throw new SqlperException("Unable to cancel statement", e);
+            }
+        }
+    }
+
+    @Override
+    public void commit() {
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to commit transaction", e);
+        } finally {
+            endTransaction();
+        }
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to rollback transaction", e);
+        } finally {
+            endTransaction();
+        }
+    }
+
     @Override
     public void close() {
         try {
-            connection.close();
+            for (ResultSetIterator iterator : new ArrayList<>(iterators)) {
+                iterator.close();
+            }
+        } finally {
+            endTransaction();
+            try {
+                if (statementCache != null && closeStatementCache) {
+                    statementCache.close();
+                }
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new SqlperException("Unable to close connection", e);
+                }
+            }
+        }
+    }
+
+    private int[] executeBatch(ParsedSql parsedSql, PreparedStatement preparedStatement, List<Object> batch, String[] returning, StatementEventImpl event) throws SQLException {
+        if (event != null) {
+            event.bound();
+        }
+        trace(parsedSql, batch);
+        int[] batchCounts = preparedStatement.executeBatch();
+        if (event != null) {
+            event.executed();
+        }
+        if (returning.length > 0) {
+            MapperRegistry mapperRegistry = mappingFactory.getMapperRegistry();
+            try (ResultSet resultSet = preparedStatement.getGeneratedKeys()) {
+                MappingMetaData resultSetMetaData = null;
+                for (int i = 0; i < batch.size() && resultSet.next(); i++) {
+                    if (resultSetMetaData == null) {
+                        resultSetMetaData = mappingFactory.extractMetaData(parsedSql, resultSet);
+                    }
+                    Object object = batch.get(i);
+                    Mapper parametersMapper = mapperRegistry.find(object.getClass());
+                    parametersMapper.map(mapperRegistry, resultSet, resultSetMetaData, 0, object.getClass(), object);
+                }
+            }
+            if (event != null) {
+                event.mapped();
+            }
+        }
+        batch.clear();
+        return batchCounts;
+    }
+
+    private StatementEventImpl startEvent(ParsedSql parsedSql) {
+        return listener != null ? new StatementEventImpl(parsedSql) : null;
+    }
+
+    private void endEvent(StatementEventImpl event) {
+        if (event != null) {
+            try {
+                listener.statementExecuted(event);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Listener failed on " + event, e);
+            }
+        }
+    }
+
+    private QueryResultCache.Lookup lookupResult(String sql, Object[] values, Class type, boolean one) {
+        if (queryResultCache == null || !queryResultCache.isCacheable(sql, type) || !isAutoCommit()) {
+            return null;
+        }
+        return queryResultCache.lookup(sql, values, type, one);
+    }
+
+    /**
+     * Look up by the values of the parameters read from the object, before any statement is prepared.
+     */
+    private QueryResultCache.Lookup lookupResult(String sql, String[] names, Mapper parametersMapper, Object parameters, Class type, boolean one) {
+        if (queryResultCache == null || !(parametersMapper instanceof ObjectMapper) || !queryResultCache.isCacheable(sql, type)) {
+            return null;
+        }
+        Object[] values = ((ObjectMapper) parametersMapper).getParameterValues(names, parameters);
+        return values != null ? lookupResult(sql, values, type, one) : null;
+    }
+
+    /**
+     * @return true if the connection is in auto commit, then invalidate what a transaction ended directly on it wrote
+     */
+    private boolean isAutoCommit() {
+        boolean autoCommit;
+        try {
+            autoCommit = connection.getAutoCommit();
         } catch (SQLException e) {
-            throw new SqlperException("Unable to close connection", e);
+            return false;
+        }
+        if (autoCommit && !pendingInvalidations.isEmpty()) {
+            endTransaction();
+        }
+        return autoCommit;
+    }
+
+    private void invalidateResults(ParsedSql parsedSql) {
+        if (queryResultCache != null) {
+            // now, so no session caches what this statement replaces, and again when the transaction ends,
+            // since a session may have cached what was still committed in between
+            queryResultCache.invalidate(parsedSql.getSql());
+            try {
+                if (!connection.getAutoCommit()) {
+                    pendingInvalidations.add(parsedSql.getSql());
+                } else if (!pendingInvalidations.isEmpty()) {
+                    endTransaction();
+                }
+            } catch (SQLException e) {
+                queryResultCache.invalidateAll();
+            }
+        }
+    }
+
+    private void endTransaction() {
+        if (queryResultCache != null) {
+            for (String sql : pendingInvalidations) {
+                queryResultCache.invalidate(sql);
+            }
+        }
+        pendingInvalidations.clear();
+    }
+
+    private ParsedSql expandSql(ParsedSql parsedSql, Mapper parametersMapper, Object parameters) {
+        if (parametersMapper instanceof ObjectMapper && parsedSql.getParameterNames().length > 0) {
+            int[] elementCounts = ((ObjectMapper) parametersMapper).getElementCounts(parsedSql.getParameterNames(), parameters);
+            if (elementCounts != null) {
+                return mappingFactory.expandSql(parsedSql, elementCounts);
+            }
+        }
+        return parsedSql;
+    }
+
+    /**
+     * Prepare the statement as one step of the event, or end the event if that fails.
+     */
+    private PreparedStatement prepareStatement(ParsedSql parsedSql, String[] returning, StatementEventImpl event) throws SQLException {
+        boolean prepared = false;
+        try {
+            PreparedStatement preparedStatement = prepareStatement(parsedSql, returning);
+            prepared = true;
+            return preparedStatement;
+        } finally {
+            if (!prepared) {
+                endEvent(event);
+            } else if (event != null) {
+                event.prepared();
+            }
+        }
+    }
+
+    private PreparedStatement prepareStatement(ParsedSql parsedSql, String[] returning) throws SQLException {
+        PreparedStatement preparedStatement = null;
+        if (statementCache != null) {
+            preparedStatement = statementCache.take(parsedSql.getSql(), returning);
+        }
+        if (preparedStatement == null) {
+            if (returning.length > 0) {
+                preparedStatement = connection.prepareStatement(parsedSql.getSql(), returning);
+            } else {
+                preparedStatement = connection.prepareStatement(parsedSql.getSql());
+            }
+        }
+        executingStatement = preparedStatement;
+        return preparedStatement;
+    }
+
+    /**
+     * Apply the session fetch size to the statement.
+     *
+     * @return the fetch size to restore before the statement goes back to the cache, or -1 if none
+     */
+    private int applyFetchSize(PreparedStatement preparedStatement) throws SQLException {
+        if (fetchSize <= 0) {
+            return -1;
+        }
+        int previous = statementCache != null ? preparedStatement.getFetchSize() : -1;
+        if (previous == fetchSize) {
+            return -1;
+        }
+        preparedStatement.setFetchSize(fetchSize);
+        return previous;
+    }
+
+    private void releaseStatement(ParsedSql parsedSql, String[] returning, PreparedStatement preparedStatement, int restoreFetchSize) throws SQLException {
+        if (restoreFetchSize >= 0 && !preparedStatement.isClosed()) {
+            try {
+                preparedStatement.setFetchSize(restoreFetchSize);
+            } catch (SQLException e) {
+                // do not cache a statement left with the fetch size of this session
+                if (executingStatement == preparedStatement) {
+                    executingStatement = null;
+                }
+                preparedStatement.close();
+                throw e;
+            }
+        }
+        releaseStatement(parsedSql, returning, preparedStatement);
+    }
+
+    private void releaseStatement(ParsedSql parsedSql, String[] returning, PreparedStatement preparedStatement) throws SQLException {
+        if (executingStatement == preparedStatement) {
+            executingStatement = null;
+        }
+        if (statementCache != null) {
+            statementCache.release(parsedSql.getSql(), returning, preparedStatement);
+        } else {
+            preparedStatement.close();
         }
     }
 
@@ -214,4 +892,131 @@ public class SqlperImpl implements Sqlper {
                     parameters});
         }
     }
+
+    private class ResultSetIterator<T> implements ResultIterator<T> {
+
+        private final ParsedSql parsedSql;
+        private final PreparedStatement preparedStatement;
+        private final int restoreFetchSize;
+        private final ResultSet resultSet;
+        private final MappingMetaData resultsMetaData;
+        private final Mapper<T> resultsMapper;
+        private final Class<T> resultsType;
+        private final StatementEventImpl event;
+
+        private long rowCount;
+        private boolean failed;
+        private boolean fetched;
+        private boolean hasNext;
+        private boolean closed;
+
+        private ResultSetIterator(ParsedSql parsedSql, PreparedStatement preparedStatement, int restoreFetchSize, ResultSet resultSet, MappingMetaData resultsMetaData, Mapper<T> resultsMapper, Class<T> resultsType, StatementEventImpl event) {
+            this.parsedSql = parsedSql;
+            this.preparedStatement = preparedStatement;
+            this.restoreFetchSize = restoreFetchSize;
+            this.resultSet = resultSet;
+            this.resultsMetaData = resultsMetaData;
+            this.resultsMapper = resultsMapper;
+            this.resultsType = resultsType;
+            this.event = event;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!fetched) {
+                try {
+                    hasNext = resultSet.next();
+                } catch (SQLException e) {
+                    failed = true;
+                    close();
+                    throw new SqlperException("Unable to fetch next row: " + parsedSql.getSql(), e);
+                }
+                fetched = true;
+                if (!hasNext) {
+                    close();
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            fetched = false;
+            try {
+                T result = resultsMapper.map(mappingFactory.getMapperRegistry(), resultSet, resultsMetaData, 0, resultsType, null);
+                rowCount++;
+                if (event != null) {
+                    event.mapped();
+                }
+                return result;
+            } catch (RuntimeException e) {
+                failed = true;
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            fetched = true;
+            hasNext = false;
+            iterators.remove(this);
+            if (event != null) {
+                if (!failed) {
+                    // exhausted or abandoned
+                    event.succeeded(rowCount);
+                }
+                endEvent(event);
+            }
+            try {
+                try {
+                    resultSet.close();
+                } finally {
+                    releaseStatement(parsedSql, NO_RETURNING, preparedStatement, restoreFetchSize);
+                }
+            } catch (SQLException e) {
+                throw new SqlperException("Unable to close result set: " + parsedSql.getSql(), e);
+            }
+        }
+    }
+
+    private static class UpdateCounts {
+
+        private int[] counts = new int[16];
+        private int size;
+
+        private void add(int[] batchCounts) {
+            if (size + batchCounts.length > counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, size + batchCounts.length));
+            }
+            System.arraycopy(batchCounts, 0, counts, size, batchCounts.length);
+            size += batchCounts.length;
+        }
+
+        private long getRowCount() {
+            long rowCount = 0;
+            for (int i = 0; i < size; i++) {
+                if (counts[i] > 0) {
+                    rowCount += counts[i];
+                }
+            }
+            return rowCount;
+        }
+
+        private int[] toArray() {
+            return Arrays.copyOf(counts, size);
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.support.cache.CacheStatistics;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded LRU cache of {@link PreparedStatement} for a single {@link java.sql.Connection}.
+ * Statements are taken out of the cache while in use and given back afterward,
+ * so nested use of the same statement simply prepares a new one.
+ * This class is not thread safe, as a Sqlper session is not.
+ */
+public class StatementCache implements AutoCloseable {
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private boolean closed;
+
+    public StatementCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+        this.maxSize = maxSize;
+        statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    evictionCount++;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public PreparedStatement take(String sql, String[] returning) {
+        PreparedStatement preparedStatement = closed ? null : statements.remove(new Key(sql, returning));
+        if (preparedStatement != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return preparedStatement;
+    }
+
+    public void release(String sql, String[] returning, PreparedStatement preparedStatement) throws SQLException {
+        if (closed || preparedStatement.isClosed()) {
+            preparedStatement.close();
+            return;
+        }
+        try {
+            preparedStatement.clearParameters();
+            // rows added by a batch that failed midway must not run with the next one
+            preparedStatement.clearBatch();
+        } catch (SQLException e) {
+            closeQuietly(preparedStatement);
+            throw e;
+        }
+        PreparedStatement previous = statements.put(new Key(sql, returning), preparedStatement);
+        if (previous != null && previous != preparedStatement) {
+            previous.close();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getSize() {
+        return statements.size();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(hitCount, missCount, evictionCount, statements.size());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (PreparedStatement preparedStatement : statements.values()) {
+            closeQuietly(preparedStatement);
+        }
+        statements.clear();
+    }
+
+    private void closeQuietly(PreparedStatement preparedStatement) {
+        try {
+            preparedStatement.close();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Unable to close cached statement", e);
+        }
+    }
+
+    private static class Key {
+
+        private final String sql;
+        private final String[] returning;
+        private final int hash;
+
+        private Key(String sql, String[] returning) {
+            this.sql = sql;
+            this.returning = returning != null && returning.length > 0 ? returning : null;
+            hash = 31 * sql.hashCode() + Arrays.hashCode(this.returning);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && sql.equals(key.sql) && Arrays.equals(returning, key.returning);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.ParsedSql;
+import ca.pjer.sqlper.StatementEvent;
+
+/**
+ * Accumulates the time elapsed since the previous step into the current one,
+ * so steps can alternate (bind, execute, bind, execute...).
+ */
+public class StatementEventImpl implements StatementEvent {
+
+    private final ParsedSql parsedSql;
+
+    private long last;
+    private long prepareTime;
+    private long bindTime;
+    private long executeTime;
+    private long mappingTime;
+    private long rowCount;
+    private boolean successful;
+
+    public StatementEventImpl(ParsedSql parsedSql) {
+        this.parsedSql = parsedSql;
+        last = System.nanoTime();
+    }
+
+    public void prepared() {
+        prepareTime += elapsed();
+    }
+
+    public void bound() {
+        bindTime += elapsed();
+    }
+
+    public void executed() {
+        executeTime += elapsed();
+    }
+
+    public void mapped() {
+        mappingTime += elapsed();
+    }
+
+    public void succeeded(long rowCount) {
+        this.rowCount = rowCount;
+        successful = true;
+    }
+
+    private long elapsed() {
+        long now = System.nanoTime();
+        long elapsed = now - last;
+        last = now;
+        return elapsed;
+    }
+
+    @Override
+    public ParsedSql getParsedSql() {
+        return parsedSql;
+    }
+
+    @Override
+    public long getPrepareTime() {
+        return prepareTime;
+    }
+
+    @Override
+    public long getBindTime() {
+        return bindTime;
+    }
+
+    @Override
+    public long getExecuteTime() {
+        return executeTime;
+    }
+
+    @Override
+    public long getMappingTime() {
+        return mappingTime;
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementEvent{sql=" + parsedSql.getSql() + ", prepareTime=" + prepareTime + ", bindTime=" + bindTime
+                + ", executeTime=" + executeTime + ", mappingTime=" + mappingTime + ", rowCount=" + rowCount + ", successful=" + successful + '}';
+    }
+}
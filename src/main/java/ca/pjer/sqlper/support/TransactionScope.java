@@ -0,0 +1,230 @@
+package ca.pjer.sqlper.support;
+
+import ca.pjer.sqlper.ColumnarResult;
+import ca.pjer.sqlper.Mapper;
+import ca.pjer.sqlper.ResultIterator;
+import ca.pjer.sqlper.RowCollector;
+import ca.pjer.sqlper.Sqlper;
+import ca.pjer.sqlper.SqlperCallback;
+import ca.pjer.sqlper.SqlperException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A session shared by every unit of work of a transaction on the same thread.
+ * Only the outermost unit of work commits (or rolls back) and closes the session,
+ * the others see a {@link Sqlper} whose close does nothing.
+ */
+class TransactionScope {
+
+    private final Sqlper sqlper;
+    private final Sqlper nestedSqlper;
+    private boolean rollbackOnly;
+
+    TransactionScope(Sqlper sqlper) {
+        this.sqlper = sqlper;
+        nestedSqlper = new NestedSqlper(sqlper);
+    }
+
+    Sqlper getNestedSqlper() {
+        return nestedSqlper;
+    }
+
+    <T> T execute(SqlperCallback<T> callback) {
+        Connection connection = sqlper.getConnection();
+        boolean autoCommit;
+        try {
+            autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to begin transaction", e);
+        }
+        T result;
+        try {
+            result = callback.call(sqlper);
+        } catch (Throwable t) {
+            rollback(connection, autoCommit, t);
+            throw propagate(t);
+        }
+        if (rollbackOnly) {
+            SqlperException e = new SqlperException("Transaction was marked rollback only by a nested unit of work");
+            rollback(connection, autoCommit, e);
+            throw e;
+        }
+        try {
+            sqlper.commit();
+        } catch (SqlperException e) {
+            rollback(connection, autoCommit, e);
+            throw e;
+        }
+        restoreAutoCommit(connection, autoCommit);
+        return result;
+    }
+
+    <T> T executeNested(SqlperCallback<T> callback) {
+        try {
+            return callback.call(nestedSqlper);
+        } catch (Throwable t) {
+            rollbackOnly = true;
+            throw propagate(t);
+        }
+    }
+
+    private void rollback(Connection connection, boolean autoCommit, Throwable cause) {
+        try {
+            sqlper.rollback();
+            restoreAutoCommit(connection, autoCommit);
+        } catch (SqlperException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void restoreAutoCommit(Connection connection, boolean autoCommit) {
+        if (!autoCommit) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to end transaction", e);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new SqlperException("Unable to execute unit of work", t);
+    }
+
+    private static class NestedSqlper implements Sqlper {
+
+        private final Sqlper sqlper;
+
+        private NestedSqlper(Sqlper sqlper) {
+            this.sqlper = sqlper;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return sqlper.getConnection();
+        }
+
+        @Override
+        public int update(String sql) {
+            return sqlper.update(sql);
+        }
+
+        @Override
+        public int update(String sql, Object parameters) {
+            return sqlper.update(sql, parameters);
+        }
+
+        @Override
+        public int update(String sql, Object parameters, String... returning) {
+            return sqlper.update(sql, parameters, returning);
+        }
+
+        @Override
+        public int[] updateBatch(String sql, Iterable<?> parameters) {
+            return sqlper.updateBatch(sql, parameters);
+        }
+
+        @Override
+        public int[] updateBatch(String sql, Iterable<?> parameters, int batchSize) {
+            return sqlper.updateBatch(sql, parameters, batchSize);
+        }
+
+        @Override
+        public int[] updateBatch(String sql, Iterable<?> parameters, int batchSize, String... returning) {
+            return sqlper.updateBatch(sql, parameters, batchSize, returning);
+        }
+
+        @Override
+        public <T> int[] updateBatch(String sql, Iterable<T> parameters, int batchSize, Mapper<T> parametersMapper) {
+            return sqlper.updateBatch(sql, parameters, batchSize, parametersMapper);
+        }
+
+        @Override
+        public <T> List<T> query(String sql, Class<T> resultsType) {
+            return sqlper.query(sql, resultsType);
+        }
+
+        @Override
+        public <T> List<T> query(String sql, Object parameters, Class<T> resultsType) {
+            return sqlper.query(sql, parameters, resultsType);
+        }
+
+        @Override
+        public <T> T queryOne(String sql, Class<T> resultsType) {
+            return sqlper.queryOne(sql, resultsType);
+        }
+
+        @Override
+        public <T> T queryOne(String sql, Object parameters, Class<T> resultsType) {
+            return sqlper.queryOne(sql, parameters, resultsType);
+        }
+
+        @Override
+        public void queryOne(String sql, Object parameters) {
+            sqlper.queryOne(sql, parameters);
+        }
+
+        @Override
+        public <T> ResultIterator<T> iterate(String sql, Class<T> resultsType) {
+            return sqlper.iterate(sql, resultsType);
+        }
+
+        @Override
+        public <T> ResultIterator<T> iterate(String sql, Object parameters, Class<T> resultsType) {
+            return sqlper.iterate(sql, parameters, resultsType);
+        }
+
+        @Override
+        public ColumnarResult queryColumns(String sql) {
+            return sqlper.queryColumns(sql);
+        }
+
+        @Override
+        public ColumnarResult queryColumns(String sql, Object parameters) {
+            return sqlper.queryColumns(sql, parameters);
+        }
+
+        @Override
+        public <R> R collect(String sql, RowCollector<R> collector) {
+            return sqlper.collect(sql, collector);
+        }
+
+        @Override
+        public <R> R collect(String sql, Object parameters, RowCollector<R> collector) {
+            return sqlper.collect(sql, parameters, collector);
+        }
+
+        @Override
+        public void commit() {
+            throw new SqlperException("Unable to commit within a transaction, the outermost unit of work commits it");
+        }
+
+        @Override
+        public void rollback() {
+            throw new SqlperException("Unable to rollback within a transaction, throw from the unit of work instead");
+        }
+
+        @Override
+        public void cancel() {
+            sqlper.cancel();
+        }
+
+        @Override
+        public void close() {
+            // the outermost unit of work closes the session
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ca.pjer.sqlper.support.cache;
+
+public interface Cache<K, V> {
+
+    V get(K key);
+
+    void put(K key, V value);
+
+    void remove(K key);
+
+    void clear();
+
+    int size();
+
+    CacheStatistics getStatistics();
+
+}
@@ -0,0 +1,46 @@
+package ca.pjer.sqlper.support.cache;
+
+public class CacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+
+    public CacheStatistics(long hitCount, long missCount, long evictionCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount + ", size=" + size + '}';
+    }
+}
@@ -0,0 +1,137 @@
+package ca.pjer.sqlper.support.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded, thread safe, LRU cache.
+ * Keys are spread over independently locked segments, each one evicting its own least recently used entries,
+ * so concurrent lookups of different keys rarely contend.
+ */
+public class LruCache<K, V> implements Cache<K, V> {
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    public LruCache(int maxSize) {
+        this(maxSize, Math.max(1, Math.min(16, maxSize / 16)));
+    }
+
+    public LruCache(int maxSize, int concurrencyLevel) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+        if (concurrencyLevel < 1 || concurrencyLevel > maxSize) {
+            throw new IllegalArgumentException("concurrencyLevel must be between one and maxSize");
+        }
+        int segmentCount = Integer.highestOneBit(concurrencyLevel);
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // spread the remainder over the first segments so the total is exactly maxSize
+            segments[i] = new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+        segmentMask = segmentCount - 1;
+    }
+
+    @Override
+    public V get(K key) {
+        return segmentFor(key).get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        long hitCount = 0;
+        long missCount = 0;
+        long evictionCount = 0;
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                hitCount += segment.hitCount;
+                missCount += segment.missCount;
+                evictionCount += segment.evictionCount;
+                size += segment.entries.size();
+            }
+        }
+        return new CacheStatistics(hitCount, missCount, evictionCount, size);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    private static class Segment<K, V> {
+
+        private final LinkedHashMap<K, V> entries;
+
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+
+        private Segment(final int maxSize) {
+            entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    if (size() > maxSize) {
+                        evictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized V get(K key) {
+            V value = entries.get(key);
+            if (value != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            return value;
+        }
+
+        private synchronized void put(K key, V value) {
+            entries.put(key, value);
+        }
+
+        private synchronized void remove(K key) {
+            entries.remove(key);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package ca.pjer.sqlper.support.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size and time bounded cache of query results, shared by the sessions of a {@link ca.pjer.sqlper.SqlperManager}.
+ * Only queries reading exclusively from registered tables are cached,
+ * and only when their results type is immutable (see {@link #addImmutableType(Class)}) or a Map,
+ * whose rows are then returned as unmodifiable maps (rows holding values of other types, as byte[] or dates,
+ * are not cached). Lists of results are returned unmodifiable.
+ * An update touching a registered table invalidates every result read from it,
+ * an update whose tables cannot be told invalidates everything.
+ */
+public class QueryResultCache {
+
+    private static final String[] NO_TABLES = new String[0];
+
+    private final LruCache<Key, Entry> entries;
+    private final long ttl;
+
+    private final ConcurrentHashMap<String, AtomicLong> tableGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Set<Class> immutableTypes = new CopyOnWriteArraySet<>();
+    private final LruCache<String, String[]> tables = new LruCache<>(1024);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    public QueryResultCache(int maxSize) {
+        this(maxSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param ttl how long a result stays valid, 0 for as long as it is not invalidated nor evicted
+     */
+    public QueryResultCache(int maxSize, long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl must not be negative");
+        }
+        entries = new LruCache<>(maxSize);
+        this.ttl = unit.toNanos(ttl);
+        Collections.addAll(immutableTypes, String.class, Boolean.class, Character.class, Byte.class, Short.class,
+                Integer.class, Long.class, Float.class, Double.class, BigDecimal.class, BigInteger.class);
+    }
+
+    /**
+     * Cache the queries reading from these tables (and only from registered tables).
+     */
+    public void addTable(String... tables) {
+        for (String table : tables) {
+            tableGenerations.putIfAbsent(normalize(table), new AtomicLong());
+        }
+    }
+
+    /**
+     * Declare a results type whose instances are never modified, so they can be shared between callers.
+     */
+    public void addImmutableType(Class type) {
+        immutableTypes.add(type);
+    }
+
+    public boolean isCacheable(String sql, Class type) {
+        if (!type.isEnum() && !immutableTypes.contains(type) && !Map.class.isAssignableFrom(type)) {
+            return false;
+        }
+        String[] tables = getTables(sql);
+        if (tables.length == 0) {
+            return false;
+        }
+        for (String table : tables) {
+            if (!tableGenerations.containsKey(table)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the lookup of the query result, or null if this query is not cacheable
+     */
+    public Lookup lookup(String sql, Object[] parameters, Class type, boolean one) {
+        if (!isCacheable(sql, type)) {
+            return null;
+        }
+        Key key = new Key(sql, parameters, type, one);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.isValid()) {
+                hitCount.incrementAndGet();
+                return new Lookup(key, entry);
+            }
+            entries.remove(key);
+            expiredCount.incrementAndGet();
+        }
+        missCount.incrementAndGet();
+        // generations are taken before the query runs, so a concurrent update makes this result stale right away
+        String[] tables = getTables(sql);
+        AtomicLong[] tableGenerations = new AtomicLong[tables.length];
+        long[] generations = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            tableGenerations[i] = this.tableGenerations.get(tables[i]);
+            generations[i] = tableGenerations[i].get();
+        }
+        return new Lookup(key, new Entry(generation.get(), tableGenerations, generations));
+    }
+
+    /**
+     * Invalidate the results read from the registered tables touched by this statement.
+     */
+    public void invalidate(String sql) {
+        String[] tables = getTables(sql);
+        if (tables.length == 0) {
+            invalidateAll();
+            return;
+        }
+        for (String table : tables) {
+            AtomicLong tableGeneration = tableGenerations.get(table);
+            if (tableGeneration != null) {
+                tableGeneration.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidateTable(String table) {
+        AtomicLong tableGeneration = tableGenerations.get(normalize(table));
+        if (tableGeneration != null) {
+            tableGeneration.incrementAndGet();
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the statistics of this cache, where evictions include expired and invalidated results
+     */
+    public CacheStatistics getStatistics() {
+        CacheStatistics statistics = entries.getStatistics();
+        return new CacheStatistics(hitCount.get(), missCount.get(), statistics.getEvictionCount() + expiredCount.get(), statistics.getSize());
+    }
+
+    private String[] getTables(String sql) {
+        String[] tables = this.tables.get(sql);
+        if (tables == null) {
+            tables = parseTables(sql);
+            this.tables.put(sql, tables);
+        }
+        return tables;
+    }
+
+    /**
+     * The names following FROM, JOIN, INTO, UPDATE, TABLE and USING, and the comma separated names of a FROM clause.
+     * Literals and comments are skipped, schema qualifiers and quotes are dropped.
+     */
+    static String[] parseTables(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        // the parenthesis depths at which a FROM clause is open
+        BitSet inFrom = new BitSet();
+        boolean expectTable = false;
+        int depth = 0;
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i = skip(sql, i + 1, "'");
+                expectTable = false;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                i = skip(sql, i + 2, "\n");
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                i = skip(sql, i + 2, "*/");
+            } else if (c == '(') {
+                depth++;
+                expectTable = false;
+                i++;
+            } else if (c == ')') {
+                inFrom.clear(depth);
+                depth = Math.max(depth - 1, 0);
+                i++;
+            } else if (c == ',') {
+                expectTable = inFrom.get(depth);
+                i++;
+            } else if (c == '"' || c == '`' || Character.isJavaIdentifierStart(c)) {
+                String name = null;
+                boolean quoted = false;
+                // a possibly qualified, possibly quoted, name
+                while (i < length) {
+                    char d = sql.charAt(i);
+                    if (d == '"' || d == '`') {
+                        int end = sql.indexOf(d, i + 1);
+                        end = end < 0 ? length : end;
+                        name = sql.substring(i + 1, end);
+                        quoted = true;
+                        i = Math.min(end + 1, length);
+                    } else if (Character.isJavaIdentifierStart(d)) {
+                        int end = i + 1;
+                        while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+                            end++;
+                        }
+                        name = sql.substring(i, end);
+                        quoted = false;
+                        i = end;
+                    } else {
+                        break;
+                    }
+                    if (i < length && sql.charAt(i) == '.') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (name == null) {
+                    i++;
+                    continue;
+                }
+                String word = name.toUpperCase(Locale.ROOT);
+                if (expectTable) {
+                    tables.add(word);
+                    expectTable = false;
+                    continue;
+                }
+                if (quoted) {
+                    continue;
+                }
+                switch (word) {
+                    case "FROM":
+                        inFrom.set(depth);
+                        expectTable = true;
+                        break;
+                    case "JOIN":
+                    case "INTO":
+                    case "UPDATE":
+                    case "TABLE":
+                    case "USING":
+                        expectTable = true;
+                        break;
+                    case "WHERE":
+                    case "GROUP":
+                    case "ORDER":
+                    case "HAVING":
+                    case "UNION":
+                    case "SET":
+                    case "VALUES":
+                        inFrom.clear(depth);
+                        break;
+                    default:
+                }
+            } else {
+                i++;
+            }
+        }
+        return tables.isEmpty() ? NO_TABLES : tables.toArray(new String[tables.size()]);
+    }
+
+    private static int skip(String sql, int from, String end) {
+        int i = sql.indexOf(end, from);
+        return i < 0 ? sql.length() : i + end.length();
+    }
+
+    private static String normalize(String table) {
+        int dot = table.lastIndexOf('.');
+        return (dot < 0 ? table : table.substring(dot + 1)).toUpperCase(Locale.ROOT);
+    }
+
+    public class Lookup {
+
+        private final Key key;
+        private final Entry entry;
+
+        private Lookup(Key key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        public boolean isHit() {
+            return entry.hasValue;
+        }
+
+        public Object getValue() {
+            return entry.value;
+        }
+
+        /**
+         * Cache the result of the query.
+         *
+         * @return the immutable result to give to the caller
+         */
+        @SuppressWarnings("unchecked")
+        public Object put(Object value) {
+            if (!isShareable(value)) {
+                return value;
+            }
+            if (value instanceof List) {
+                List<Object> list = (List<Object>) value;
+                if (key.type != null && Map.class.isAssignableFrom(key.type)) {
+                    for (ListIterator<Object> iterator = list.listIterator(); iterator.hasNext(); ) {
+                        Object row = iterator.next();
+                        if (row != null) {
+                            iterator.set(Collections.unmodifiableMap((Map<Object, Object>) row));
+                        }
+                    }
+                }
+                value = Collections.unmodifiableList(list);
+            } else if (value instanceof Map) {
+                value = Collections.unmodifiableMap((Map<Object, Object>) value);
+            }
+            entry.value = value;
+            entry.hasValue = true;
+            entry.expiresAt = ttl > 0 ? System.nanoTime() + ttl : 0;
+            entries.put(key, entry);
+            return value;
+        }
+    }
+
+    /**
+     * @return false if the result holds Map rows with values of a type not known to be immutable
+     */
+    private boolean isShareable(Object value) {
+        if (value instanceof Map) {
+            for (Object rowValue : ((Map<?, ?>) value).values()) {
+                if (rowValue != null && !rowValue.getClass().isEnum() && !immutableTypes.contains(rowValue.getClass())) {
+                    return false;
+                }
+            }
+        } else if (value instanceof List) {
+            for (Object row : (List<?>) value) {
+                if (row instanceof Map && !isShareable(row)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private class Entry {
+
+        private final long generation;
+        private final AtomicLong[] tableGenerations;
+        private final long[] generations;
+        private volatile Object value;
+        private volatile boolean hasValue;
+        private volatile long expiresAt;
+
+        private Entry(long generation, AtomicLong[] tableGenerations, long[] generations) {
+            this.generation = generation;
+            this.tableGenerations = tableGenerations;
+            this.generations = generations;
+        }
+
+        private boolean isValid() {
+            if (expiresAt != 0 && System.nanoTime() - expiresAt > 0) {
+                return false;
+            }
+            if (generation != QueryResultCache.this.generation.get()) {
+                return false;
+            }
+            for (int i = 0; i < tableGenerations.length; i++) {
+                if (tableGenerations[i].get() != generations[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Key {
+
+        private final String sql;
+        private final Object[] parameters;
+        private final Class type;
+        private final boolean one;
+        private final int hash;
+
+        private Key(String sql, Object[] parameters, Class type, boolean one) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.type = type;
+            this.one = one;
+            hash = 31 * (31 * (31 * sql.hashCode() + Arrays.deepHashCode(parameters)) + type.hashCode()) + (one ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && one == key.one && type == key.type && sql.equals(key.sql) && Arrays.deepEquals(parameters, key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
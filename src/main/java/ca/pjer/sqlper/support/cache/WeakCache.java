@@ -0,0 +1,122 @@
+package ca.pjer.sqlper.support.cache;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A thread safe cache of weakly referenced keys, an entry is dropped once its key is no longer in use.
+ * As in {@link LruCache}, keys are spread over independently locked segments,
+ * so concurrent lookups of different keys rarely contend.
+ */
+public class WeakCache<K, V> implements Cache<K, V> {
+
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    public WeakCache() {
+        this(DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public WeakCache(int concurrencyLevel) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be greater than zero");
+        }
+        int segmentCount = Integer.highestOneBit(concurrencyLevel);
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>();
+        }
+        segmentMask = segmentCount - 1;
+    }
+
+    @Override
+    public V get(K key) {
+        return segmentFor(key).get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the statistics, without evictions since entries are only collected with their keys
+     */
+    @Override
+    public CacheStatistics getStatistics() {
+        long hitCount = 0;
+        long missCount = 0;
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                hitCount += segment.hitCount;
+                missCount += segment.missCount;
+                size += segment.entries.size();
+            }
+        }
+        return new CacheStatistics(hitCount, missCount, 0, size);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    private static class Segment<K, V> {
+
+        private final Map<K, V> entries = new WeakHashMap<>();
+
+        private long hitCount;
+        private long missCount;
+
+        private synchronized V get(K key) {
+            V value = entries.get(key);
+            if (value != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            return value;
+        }
+
+        private synchronized void put(K key, V value) {
+            entries.put(key, value);
+        }
+
+        private synchronized void remove(K key) {
+            entries.remove(key);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
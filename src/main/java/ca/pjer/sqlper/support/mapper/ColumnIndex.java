@@ -0,0 +1,141 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The names of the columns of a result set, shared by all its {@link RowMap} rows.
+ * Names are compared ignoring case and underscores, as {@link UpperUnderscoreComparator} does,
+ * through an open addressing table of their precomputed hashes, so a lookup is O(1).
+ * Columns of the same name share a slot, so the last one wins, the first one names it.
+ */
+public class ColumnIndex implements Serializable {
+
+    private final String[] columnNames;
+    // the slot of each column, -1 for a column without name
+    private final int[] columnSlots;
+    private final String[] names;
+    private final int[] hashes;
+    // the slot + 1 of each bucket, 0 if empty
+    private final int[] table;
+    private final int mask;
+
+    public ColumnIndex(String[] columnNames) {
+        this.columnNames = columnNames;
+        columnSlots = new int[columnNames.length];
+        int capacity = Integer.highestOneBit(Math.max(columnNames.length, 1) * 2 + 1) * 2;
+        table = new int[capacity];
+        mask = capacity - 1;
+        String[] names = new String[columnNames.length];
+        int[] hashes = new int[columnNames.length];
+        int slotCount = 0;
+        for (int i = 0; i < columnNames.length; i++) {
+            String name = columnNames[i];
+            if (name == null) {
+                columnSlots[i] = -1;
+                continue;
+            }
+            int hash = hash(name);
+            int slot = indexOf(name, hash, names, hashes);
+            if (slot < 0) {
+                slot = slotCount++;
+                names[slot] = name;
+                hashes[slot] = hash;
+                int bucket = hash & mask;
+                while (table[bucket] != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                table[bucket] = slot + 1;
+            }
+            columnSlots[i] = slot;
+        }
+        this.names = slotCount == names.length ? names : Arrays.copyOf(names, slotCount);
+        this.hashes = hashes;
+    }
+
+    /**
+     * @return true if this index was built from these column names (compared by identity)
+     */
+    public boolean isFor(String[] columnNames) {
+        return this.columnNames == columnNames;
+    }
+
+    public int getSlotCount() {
+        return names.length;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @return the slot of the column, from 0, or -1 if it has no name
+     */
+    public int getSlot(int column) {
+        return columnSlots[column];
+    }
+
+    /**
+     * @return the slot of the name, or -1 if there is no such column
+     */
+    public int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String name = (String) key;
+        return indexOf(name, hash(name), names, hashes);
+    }
+
+    private int indexOf(String name, int hash, String[] names, int[] hashes) {
+        int bucket = hash & mask;
+        while (true) {
+            int slot = table[bucket] - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            if (hashes[slot] == hash && equals(names[slot], name)) {
+                return slot;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    private static char normalize(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '_') {
+                hash = 31 * hash + normalize(c);
+            }
+        }
+        // spread the high bits to the bucket bits
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String s1, String s2) {
+        int l1 = s1.length();
+        int l2 = s2.length();
+        int i1 = 0;
+        int i2 = 0;
+        while (true) {
+            while (i1 < l1 && s1.charAt(i1) == '_') {
+                i1++;
+            }
+            while (i2 < l2 && s2.charAt(i2) == '_') {
+                i2++;
+            }
+            if (i1 >= l1 || i2 >= l2) {
+                return i1 >= l1 && i2 >= l2;
+            }
+            char c1 = s1.charAt(i1++);
+            char c2 = s2.charAt(i2++);
+            if (c1 != c2 && normalize(c1) != normalize(c2)) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.Mapper;
+import ca.pjer.sqlper.MapperRegistry;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.SqlperException;
+import ca.pjer.sqlper.support.cache.Cache;
+import ca.pjer.sqlper.support.cache.WeakCache;
+
+import java.beans.ConstructorProperties;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each row into a new instance created by a single constructor call, for immutable types.
+ * Columns are matched to the parameters named by {@link ConstructorProperties} when the constructor has it,
+ * else by position to the only constructor with as many parameters as there are columns.
+ * Parameters are bound from the getters of the object, as {@link ReflexionObjectMapper} does.
+ */
+public class ConstructorObjectMapper<T> implements Mapper<T>, PlanCache {
+
+    // arities invoked without an array of arguments
+    private static final int MAX_EXACT_ARITY = 8;
+
+    private final Comparator<String> nameComparator;
+    private final ReflexionObjectMapper<T> bindingMapper;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final Cache<MappingMetaData, Map<Class, ConstructorPlan>> planCache = new WeakCache<>();
+    private volatile ConstructorPlan lastPlan;
+
+    public ConstructorObjectMapper() {
+        this(UpperUnderscoreComparator.INSTANCE);
+    }
+
+    public ConstructorObjectMapper(Comparator<String> nameComparator) {
+        this.nameComparator = nameComparator;
+        bindingMapper = new ReflexionObjectMapper<>(nameComparator);
+    }
+
+    @Override
+    public void map(MapperRegistry mapperRegistry, PreparedStatement preparedStatement, MappingMetaData metaData, int index, Class<T> type, T object) {
+        bindingMapper.map(mapperRegistry, preparedStatement, metaData, index, type, object);
+    }
+
+    @Override
+    public T map(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData, int index, Class<T> type, T object) {
+        if (object != null) {
+            throw new SqlperException("Unable to map into an existing instance of immutable " + type);
+        }
+        ConstructorPlan plan = getPlan(mapperRegistry, metaData, type);
+        try {
+            return (T) plan.newInstance(mapperRegistry, resultSet, metaData);
+        } catch (SqlperException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new SqlperException("Unable to create instance of " + type, t);
+        }
+    }
+
+    private ConstructorPlan getPlan(MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+        ConstructorPlan last = lastPlan;
+        if (last != null && last.metaData == metaData && last.type == type && last.mapperRegistry == mapperRegistry) {
+            return last;
+        }
+        Map<Class, ConstructorPlan> plans = planCache.get(metaData);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<>();
+            planCache.put(metaData, plans);
+        }
+        ConstructorPlan plan = plans.get(type);
+        if (plan == null || plan.mapperRegistry != mapperRegistry) {
+            plan = new ConstructorPlan(mapperRegistry, metaData, type);
+            plans.put(type, plan);
+        }
+        lastPlan = plan;
+        return plan;
+    }
+
+    @Override
+    public void clearPlans() {
+        planCache.clear();
+        lastPlan = null;
+        bindingMapper.clearPlans();
+    }
+
+    /**
+     * @return the column of each parameter of the constructor, or null if it cannot be mapped from these columns
+     */
+    private int[] matchColumns(Constructor<?> constructor, String[] names) {
+        ConstructorProperties properties = constructor.getAnnotation(ConstructorProperties.class);
+        int arity = constructor.getParameterTypes().length;
+        int[] columns = new int[arity];
+        if (properties == null) {
+            if (arity != names.length) {
+                return null;
+            }
+            for (int i = 0; i < arity; i++) {
+                columns[i] = i;
+            }
+            return columns;
+        }
+        String[] parameterNames = properties.value();
+        for (int i = 0; i < arity; i++) {
+            columns[i] = -1;
+            for (int c = 0; c < names.length; c++) {
+                if (names[c] != null && (nameComparator != null ? nameComparator.compare(names[c], parameterNames[i]) == 0 : names[c].equals(parameterNames[i]))) {
+                    columns[i] = c;
+                    break;
+                }
+            }
+            if (columns[i] < 0) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * What is invariant while mapping rows of a given result set shape into a given type:
+     * the constructor handle, and the column, type and mapper of each of its parameters.
+     */
+    private class ConstructorPlan {
+
+        private final MappingMetaData metaData;
+        private final Class type;
+        private final MapperRegistry mapperRegistry;
+        private final MethodHandle handle;
+        private final int[] columns;
+        private final Class[] parameterTypes;
+        private final Mapper[] mappers;
+        // the value of a primitive parameter from a null column
+        private final Object[] defaults;
+
+        private ConstructorPlan(MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+            this.metaData = metaData;
+            this.type = type;
+            this.mapperRegistry = mapperRegistry;
+            Constructor<?> constructor = null;
+            int[] columns = null;
+            boolean ambiguous = false;
+            for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+                int[] candidateColumns = matchColumns(candidate, metaData.getNames());
+                if (candidateColumns == null) {
+                    continue;
+                }
+                // the annotated constructor using the most columns wins
+                if (constructor == null || candidateColumns.length > columns.length) {
+                    constructor = candidate;
+                    columns = candidateColumns;
+                    ambiguous = false;
+                } else if (candidateColumns.length == columns.length) {
+                    ambiguous = true;
+                }
+            }
+            if (constructor == null) {
+                throw new SqlperException("No constructor of " + type + " matches the columns " + Arrays.toString(metaData.getNames()));
+            }
+            if (ambiguous) {
+                throw new SqlperException("More than one constructor of " + type + " matches the columns " + Arrays.toString(metaData.getNames()));
+            }
+            this.columns = columns;
+            parameterTypes = constructor.getParameterTypes();
+            mappers = new Mapper[parameterTypes.length];
+            defaults = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                mappers[i] = mapperRegistry.find(parameterTypes[i]);
+                if (parameterTypes[i].isPrimitive()) {
+                    defaults[i] = Array.get(Array.newInstance(parameterTypes[i], 1), 0);
+                }
+            }
+            try {
+                constructor.setAccessible(true);
+                MethodHandle handle = lookup.unreflectConstructor(constructor);
+                if (parameterTypes.length <= MAX_EXACT_ARITY) {
+                    handle = handle.asType(MethodType.genericMethodType(parameterTypes.length));
+                } else {
+                    handle = handle.asSpreader(Object[].class, parameterTypes.length).asType(MethodType.methodType(Object.class, Object[].class));
+                }
+                this.handle = handle;
+            } catch (IllegalAccessException | SecurityException e) {
+                throw new SqlperException("Unable to access constructor " + constructor, e);
+            }
+        }
+
+        private Object value(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData, int i) {
+            Object value = mappers[i].map(mapperRegistry, resultSet, metaData, columns[i], parameterTypes[i], null);
+            return value != null ? value : defaults[i];
+        }
+
+        private Object newInstance(MapperRegistry r, ResultSet rs, MappingMetaData m) throws Throwable {
+            switch (columns.length) {
+                case 0:
+                    return handle.invokeExact();
+                case 1:
+                    return handle.invokeExact(value(r, rs, m, 0));
+                case 2:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1));
+                case 3:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1), value(r, rs, m, 2));
+                case 4:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1), value(r, rs, m, 2), value(r, rs, m, 3));
+                case 5:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1), value(r, rs, m, 2), value(r, rs, m, 3),
+                            value(r, rs, m, 4));
+                case 6:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1), value(r, rs, m, 2), value(r, rs, m, 3),
+                            value(r, rs, m, 4), value(r, rs, m, 5));
+                case 7:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1), value(r, rs, m, 2), value(r, rs, m, 3),
+                            value(r, rs, m, 4), value(r, rs, m, 5), value(r, rs, m, 6));
+                case 8:
+                    return handle.invokeExact(value(r, rs, m, 0), value(r, rs, m, 1), value(r, rs, m, 2), value(r, rs, m, 3),
+                            value(r, rs, m, 4), value(r, rs, m, 5), value(r, rs, m, 6), value(r, rs, m, 7));
+                default:
+                    Object[] values = new Object[columns.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = value(r, rs, m, i);
+                    }
+                    return handle.invokeExact(values);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Exports rows as CSV: a value is quoted only when it contains the delimiter, a quote or a line end
+ * (long character values are always quoted), a null is an empty field and an empty string is "".
+ * Binary values are written as hexadecimal.
+ * <pre>
+ * sqlper.collect("SELECT * FROM ITEM", new CsvCollector(writer));
+ * </pre>
+ */
+public class CsvCollector extends ExportCollector {
+
+    private char delimiter = ',';
+    private boolean header = true;
+
+    public CsvCollector(Writer writer) {
+        super(writer);
+    }
+
+    /**
+     * Write UTF-8 to the stream.
+     */
+    public CsvCollector(OutputStream outputStream) {
+        super(outputStream, Charset.forName("UTF-8"));
+    }
+
+    public CsvCollector(OutputStream outputStream, Charset charset) {
+        super(outputStream, charset);
+    }
+
+    public void setDelimiter(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @param header true (the default) to write the column names as the first line
+     */
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    @Override
+    protected void start(String[] names) throws IOException {
+        if (!header) {
+            return;
+        }
+        for (int i = 0; i < names.length; i++) {
+            beginColumn(i);
+            writeText(names[i]);
+        }
+        endRow();
+    }
+
+    @Override
+    protected void beginRow() {
+    }
+
+    @Override
+    protected void beginColumn(int index) throws IOException {
+        if (index > 0) {
+            writer.write(delimiter);
+        }
+    }
+
+    @Override
+    protected void endRow() throws IOException {
+        writer.write('\n');
+    }
+
+    @Override
+    protected void writeNull() {
+    }
+
+    @Override
+    protected void writeText(String value) throws IOException {
+        int length = value.length();
+        boolean quoted = length == 0;
+        for (int i = 0; i < length && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == delimiter || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) == '"') {
+                // double the quote
+                writer.write(value, start, i + 1 - start);
+                start = i;
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+
+    @Override
+    protected void writeEscaped(char[] chars, int length) throws IOException {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == '"') {
+                writer.write(chars, start, i + 1 - start);
+                start = i;
+            }
+        }
+        writer.write(chars, start, length - start);
+    }
+
+    @Override
+    protected void beginBinary() {
+    }
+
+    @Override
+    protected void endBinary() {
+    }
+}
@@ -0,0 +1,276 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.MapperRegistry;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.SqlperException;
+import ca.pjer.sqlper.StartingRowCollector;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Writes each row as text while the query is read, straight from the result set, so an export of any size
+ * runs in constant memory (with a fetch size set on the session if the driver would otherwise read it all).
+ * How each column is read and written is chosen once from its SQL type: integers are formatted without
+ * a String, long character and binary values are streamed, the others are read with getString.
+ * The result is the number of rows written, a header (if any) is written even without rows.
+ * The target is flushed, but not closed.
+ */
+public abstract class ExportCollector implements StartingRowCollector<Long> {
+
+    // how each column is read and written
+    private static final int INTEGER = 0;
+    private static final int DECIMAL = 1;
+    private static final int FLOATING = 2;
+    private static final int BOOLEAN = 3;
+    private static final int TEXT = 4;
+    private static final int TEXT_STREAM = 5;
+    private static final int BINARY_STREAM = 6;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    protected final Writer writer;
+    private final char[] digits = new char[20];
+    private final char[] chars = new char[4096];
+    private final byte[] bytes = new byte[2048];
+
+    private int[] kinds;
+    private long rowCount;
+
+    protected ExportCollector(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 8192);
+    }
+
+    protected ExportCollector(OutputStream outputStream, Charset charset) {
+        this(new OutputStreamWriter(outputStream, charset));
+    }
+
+    @Override
+    public void start(MapperRegistry mapperRegistry, MappingMetaData metaData) {
+        if (kinds != null) {
+            return;
+        }
+        kinds = getKinds(metaData.getSqlTypes());
+        try {
+            start(metaData.getNames());
+        } catch (IOException e) {
+            throw new SqlperException("Unable to start export", e);
+        }
+    }
+
+    @Override
+    public void collect(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData) {
+        start(mapperRegistry, metaData);
+        try {
+            beginRow();
+            for (int i = 0; i < kinds.length; i++) {
+                beginColumn(i);
+                writeValue(resultSet, i + 1, kinds[i]);
+            }
+            endRow();
+            rowCount++;
+        } catch (SQLException | IOException e) {
+            throw new SqlperException("Unable to export row " + (rowCount + 1), e);
+        }
+    }
+
+    @Override
+    public Long getResult() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new SqlperException("Unable to flush export", e);
+        }
+        return rowCount;
+    }
+
+    private static int[] getKinds(int[] sqlTypes) {
+        int[] kinds = new int[sqlTypes.length];
+        for (int i = 0; i < sqlTypes.length; i++) {
+            switch (sqlTypes[i]) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    kinds[i] = INTEGER;
+                    break;
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    kinds[i] = DECIMAL;
+                    break;
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    kinds[i] = FLOATING;
+                    break;
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    kinds[i] = BOOLEAN;
+                    break;
+                case Types.LONGVARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.CLOB:
+                case Types.NCLOB:
+                    kinds[i] = TEXT_STREAM;
+                    break;
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    kinds[i] = BINARY_STREAM;
+                    break;
+                default:
+                    kinds[i] = TEXT;
+            }
+        }
+        return kinds;
+    }
+
+    private void writeValue(ResultSet resultSet, int column, int kind) throws SQLException, IOException {
+        switch (kind) {
+            case INTEGER: {
+                long value = resultSet.getLong(column);
+                if (resultSet.wasNull()) {
+                    writeNull();
+                } else {
+                    writeLong(value);
+                }
+                return;
+            }
+            case DECIMAL: {
+                BigDecimal value = resultSet.getBigDecimal(column);
+                if (value == null) {
+                    writeNull();
+                } else {
+                    writer.write(value.toPlainString());
+                }
+                return;
+            }
+            case FLOATING: {
+                double value = resultSet.getDouble(column);
+                if (resultSet.wasNull()) {
+                    writeNull();
+                } else if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    writeText(Double.toString(value));
+                } else {
+                    writer.write(Double.toString(value));
+                }
+                return;
+            }
+            case BOOLEAN: {
+                boolean value = resultSet.getBoolean(column);
+                if (resultSet.wasNull()) {
+                    writeNull();
+                } else {
+                    writer.write(value ? "true" : "false");
+                }
+                return;
+            }
+            case TEXT_STREAM: {
+                try (Reader reader = resultSet.getCharacterStream(column)) {
+                    if (reader == null) {
+                        writeNull();
+                        return;
+                    }
+                    writer.write('"');
+                    int length;
+                    while ((length = reader.read(chars)) >= 0) {
+                        writeEscaped(chars, length);
+                    }
+                    writer.write('"');
+                }
+                return;
+            }
+            case BINARY_STREAM: {
+                try (InputStream inputStream = resultSet.getBinaryStream(column)) {
+                    if (inputStream == null) {
+                        writeNull();
+                        return;
+                    }
+                    beginBinary();
+                    int length;
+                    while ((length = inputStream.read(bytes)) >= 0) {
+                        writeHex(bytes, length);
+                    }
+                    endBinary();
+                }
+                return;
+            }
+            default: {
+                String value = resultSet.getString(column);
+                if (value == null) {
+                    writeNull();
+                } else {
+                    writeText(value);
+                }
+            }
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writer.write("-9223372036854775808");
+            return;
+        }
+        boolean negative = value < 0;
+        if (negative) {
+            value = -value;
+        }
+        int p = digits.length;
+        do {
+            digits[--p] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            digits[--p] = '-';
+        }
+        writer.write(digits, p, digits.length - p);
+    }
+
+    private void writeHex(byte[] bytes, int length) throws IOException {
+        int p = 0;
+        for (int i = 0; i < length; i++) {
+            if (p == chars.length) {
+                writer.write(chars, 0, p);
+                p = 0;
+            }
+            chars[p++] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[p++] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        writer.write(chars, 0, p);
+    }
+
+    /**
+     * Called before the first row, with the column names.
+     */
+    protected abstract void start(String[] names) throws IOException;
+
+    protected abstract void beginRow() throws IOException;
+
+    protected abstract void beginColumn(int index) throws IOException;
+
+    protected abstract void endRow() throws IOException;
+
+    protected abstract void writeNull() throws IOException;
+
+    /**
+     * Write a character value, quoted and escaped as needed.
+     */
+    protected abstract void writeText(String value) throws IOException;
+
+    /**
+     * Write a chunk of a character value streamed between double quotes, escaped.
+     */
+    protected abstract void writeEscaped(char[] chars, int length) throws IOException;
+
+    /**
+     * Called before the hexadecimal digits of a binary value.
+     */
+    protected abstract void beginBinary() throws IOException;
+
+    protected abstract void endBinary() throws IOException;
+}
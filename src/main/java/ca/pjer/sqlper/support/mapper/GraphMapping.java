@@ -0,0 +1,389 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.*;
+import ca.pjer.sqlper.support.DefaultMapperRegistry;
+import ca.pjer.sqlper.support.cache.Cache;
+import ca.pjer.sqlper.support.cache.WeakCache;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Maps the rows of a join into a graph of objects, in a single pass.
+ * Each type of the graph reads the columns starting with its prefix and an underscore, as BOOK_ for BOOK
+ * (the root type may have none and read the others),
+ * instances are de-duplicated by their key columns, and each child is attached to the named property of its parent:
+ * added to it if it is a collection, set otherwise.
+ * <pre>
+ * GraphMapping&lt;Author&gt; mapping = new GraphMapping&lt;&gt;(Author.class, null, "ID");
+ * mapping.join("books", Book.class, "BOOK_", "ID");
+ * List&lt;Author&gt; authors = sqlper.collect("SELECT A.*, B.ID AS BOOK_ID, B.TITLE AS BOOK_TITLE FROM ...", mapping.newCollector());
+ * </pre>
+ */
+public class GraphMapping<T> implements PlanCache {
+
+    // how a child is attached to the property of its parent
+    private static final int SINGLE = 0;
+    private static final int LIST = 1;
+    private static final int SET = 2;
+    private static final int OTHER = 3;
+
+    private final Node root;
+    private final List<Node> nodes = new ArrayList<>();
+
+    // keyed by the result set meta data, itself cached by the MappingFactory
+    private final Cache<MappingMetaData, Shape> shapeCache = new WeakCache<>();
+
+    public GraphMapping(Class<T> type, String prefix, String... keys) {
+        root = new Node(null, null, type, prefix, keys);
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Join a child type to the root type.
+     */
+    public Node join(String property, Class type, String prefix, String... keys) {
+        return root.join(property, type, prefix, keys);
+    }
+
+    /**
+     * @return a collector of the root instances, in the order they are first found
+     */
+    public RowCollector<List<T>> newCollector() {
+        return new GraphCollector();
+    }
+
+    @Override
+    public void clearPlans() {
+        shapeCache.clear();
+    }
+
+    private Shape getShape(MapperRegistry mapperRegistry, MappingMetaData metaData) {
+        Shape shape = shapeCache.get(metaData);
+        if (shape == null || shape.mapperRegistry != mapperRegistry) {
+            if (mapperRegistry instanceof DefaultMapperRegistry) {
+                // shapes hold the mappers of the nodes, those may change
+                ((DefaultMapperRegistry) mapperRegistry).addPlanCache(this);
+            }
+            shape = new Shape(mapperRegistry, metaData);
+            shapeCache.put(metaData, shape);
+        }
+        return shape;
+    }
+
+    public class Node {
+
+        private final int index;
+        private final Node parent;
+        private final String property;
+        private final Class type;
+        private final String prefix;
+        private final String[] keys;
+
+        private Node(Node parent, String property, Class type, String prefix, String[] keys) {
+            if (keys.length == 0) {
+                throw new IllegalArgumentException("At least one key is required to join " + type);
+            }
+            if (parent != null && (prefix == null || prefix.isEmpty())) {
+                throw new IllegalArgumentException("A prefix is required to join " + type);
+            }
+            synchronized (nodes) {
+                index = nodes.size();
+                nodes.add(this);
+            }
+            shapeCache.clear();
+            this.parent = parent;
+            this.property = property;
+            this.type = type;
+            this.prefix = prefix != null && !prefix.isEmpty() ? prefix : null;
+            this.keys = keys;
+        }
+
+        /**
+         * Join a child type to this one, attached to the named property of this type.
+         */
+        public Node join(String property, Class type, String prefix, String... keys) {
+            return new Node(this, property, type, prefix, keys);
+        }
+
+        public Class getType() {
+            return type;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    /**
+     * What is invariant while mapping rows of a given result set shape:
+     * the columns, keys, mapper and parent property of each node.
+     */
+    private class Shape {
+
+        private final MapperRegistry mapperRegistry;
+        private final Node[] nodes;
+        private final MappingMetaData[] metaData;
+        private final int[][] keyColumns;
+        private final ObjectMapper[] mappers;
+        private final PropertyAccessor[] parentAccessors;
+        private final int[] collectionKinds;
+
+        private Shape(MapperRegistry mapperRegistry, MappingMetaData resultSetMetaData) {
+            this.mapperRegistry = mapperRegistry;
+            synchronized (GraphMapping.this.nodes) {
+                nodes = GraphMapping.this.nodes.toArray(new GraphMapping.Node[0]);
+            }
+            int count = resultSetMetaData.getCount();
+            String[] names = resultSetMetaData.getNames();
+            String[][] nodeNames = new String[nodes.length][count];
+            for (int i = 0; i < count; i++) {
+                // the node with the longest matching prefix owns the column, the root owns the others
+                Node owner = null;
+                int ownerLength = 0;
+                for (Node node : nodes) {
+                    int length = node.prefix != null ? prefixLength(names[i], node.prefix) : -1;
+                    if (length > ownerLength) {
+                        owner = node;
+                        ownerLength = length;
+                    }
+                }
+                if (owner == null && root.prefix == null) {
+                    owner = root;
+                }
+                if (owner != null) {
+                    nodeNames[owner.index][i] = names[i].substring(ownerLength);
+                }
+            }
+            metaData = new MappingMetaData[nodes.length];
+            keyColumns = new int[nodes.length][];
+            mappers = new ObjectMapper[nodes.length];
+            parentAccessors = new PropertyAccessor[nodes.length];
+            collectionKinds = new int[nodes.length];
+            for (Node node : nodes) {
+                metaData[node.index] = new NodeMetaData(nodeNames[node.index], resultSetMetaData.getSqlTypes());
+                keyColumns[node.index] = new int[node.keys.length];
+                for (int k = 0; k < node.keys.length; k++) {
+                    keyColumns[node.index][k] = findColumn(nodeNames[node.index], node, node.keys[k]);
+                }
+                Mapper mapper = mapperRegistry.find(node.type);
+                if (!(mapper instanceof ObjectMapper)) {
+                    throw new SqlperException("Unable to map " + node.type + " in a graph, its mapper is not an ObjectMapper");
+                }
+                mappers[node.index] = (ObjectMapper) mapper;
+            }
+            for (Node node : nodes) {
+                if (node.parent != null) {
+                    PropertyAccessor accessor = mappers[node.parent.index].getPropertyAccessorOrThrow(null, node.parent.type, node.property, -1);
+                    parentAccessors[node.index] = accessor;
+                    collectionKinds[node.index] = getCollectionKind(accessor.getType());
+                }
+            }
+        }
+
+        /**
+         * @return the length of the prefix and its separator at the start of the name, or -1 if it does not start with them
+         */
+        private int prefixLength(String name, String prefix) {
+            int length = prefix.length();
+            if (!name.regionMatches(true, 0, prefix, 0, length)) {
+                return -1;
+            }
+            if (prefix.charAt(length - 1) != '_') {
+                // BOOK owns BOOK_ID, not BOOKID nor BOOKMARK
+                if (name.length() <= length || name.charAt(length) != '_') {
+                    return -1;
+                }
+                length++;
+            }
+            return name.length() > length ? length : -1;
+        }
+
+        private int findColumn(String[] nodeNames, Node node, String key) {
+            for (int i = 0; i < nodeNames.length; i++) {
+                if (nodeNames[i] != null && UpperUnderscoreComparator.INSTANCE.compare(nodeNames[i], key) == 0) {
+                    return i;
+                }
+            }
+            throw new SqlperException("Key column '" + key + "' of " + node.type + " not found in result set");
+        }
+    }
+
+    private static int getCollectionKind(Class type) {
+        if (type == null) {
+            // an undeclared property, as of a Map
+            return LIST;
+        }
+        if (!Collection.class.isAssignableFrom(type) && type != Iterable.class) {
+            return SINGLE;
+        }
+        if (type.isAssignableFrom(ArrayList.class)) {
+            return LIST;
+        }
+        if (type.isAssignableFrom(LinkedHashSet.class)) {
+            return SET;
+        }
+        return OTHER;
+    }
+
+    private class GraphCollector implements RowCollector<List<T>> {
+
+        private final List<T> results = new ArrayList<>();
+        private Shape shape;
+        private Map<Object, Object>[] identityMaps;
+        private Set<Link>[] links;
+        private Object[] instances;
+
+        @Override
+        public void collect(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData) {
+            if (shape == null) {
+                shape = getShape(mapperRegistry, metaData);
+                identityMaps = new Map[shape.nodes.length];
+                links = new Set[shape.nodes.length];
+                for (int i = 0; i < shape.nodes.length; i++) {
+                    identityMaps[i] = new HashMap<>();
+                    links[i] = new HashSet<>();
+                }
+                instances = new Object[shape.nodes.length];
+            }
+            // nodes are in declaration order, so a parent always comes before its children
+            for (Node node : shape.nodes) {
+                int n = node.index;
+                instances[n] = null;
+                Object parent = null;
+                if (node.parent != null) {
+                    parent = instances[node.parent.index];
+                    if (parent == null) {
+                        continue;
+                    }
+                }
+                Object key = readKey(resultSet, shape.keyColumns[n]);
+                if (key == null) {
+                    // no row on this side of an outer join
+                    continue;
+                }
+                Object instance = identityMaps[n].get(key);
+                boolean created = instance == null;
+                if (created) {
+                    instance = shape.mappers[n].map(mapperRegistry, resultSet, shape.metaData[n], 0, node.type, null);
+                    identityMaps[n].put(key, instance);
+                }
+                instances[n] = instance;
+                if (parent == null) {
+                    if (created) {
+                        results.add((T) instance);
+                    }
+                } else if (links[n].add(new Link(parent, key))) {
+                    attach(shape, n, parent, instance);
+                }
+            }
+        }
+
+        private Object readKey(ResultSet resultSet, int[] columns) {
+            try {
+                if (columns.length == 1) {
+                    return resultSet.getObject(columns[0] + 1);
+                }
+                Object[] values = new Object[columns.length];
+                boolean empty = true;
+                for (int k = 0; k < columns.length; k++) {
+                    values[k] = resultSet.getObject(columns[k] + 1);
+                    empty &= values[k] == null;
+                }
+                return empty ? null : Arrays.asList(values);
+            } catch (SQLException e) {
+                throw new SqlperException("Unable to read key columns", e);
+            }
+        }
+
+        private void attach(Shape shape, int n, Object parent, Object child) {
+            PropertyAccessor accessor = shape.parentAccessors[n];
+            try {
+                int kind = shape.collectionKinds[n];
+                if (kind == SINGLE) {
+                    accessor.set(parent, child);
+                    return;
+                }
+                Collection collection = (Collection) accessor.get(parent);
+                if (collection == null) {
+                    if (kind == LIST) {
+                        collection = new ArrayList();
+                    } else if (kind == SET) {
+                        collection = new LinkedHashSet();
+                    } else {
+                        collection = (Collection) accessor.getType().newInstance();
+                    }
+                    accessor.set(parent, collection);
+                }
+                collection.add(child);
+            } catch (SqlperException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SqlperException("Unable to attach " + child + " to property name '" + accessor.getName() + "' of object '" + parent + "'", e);
+            }
+        }
+
+        @Override
+        public List<T> getResult() {
+            return results;
+        }
+    }
+
+    /**
+     * The result set columns owned by a node, under their name without prefix, the others have no name.
+     */
+    private static class NodeMetaData implements MappingMetaData {
+
+        private final String[] names;
+        private final int[] sqlTypes;
+
+        private NodeMetaData(String[] names, int[] sqlTypes) {
+            this.names = names;
+            this.sqlTypes = sqlTypes;
+        }
+
+        @Override
+        public int getCount() {
+            return names.length;
+        }
+
+        @Override
+        public String[] getNames() {
+            return names;
+        }
+
+        @Override
+        public int[] getSqlTypes() {
+            return sqlTypes;
+        }
+    }
+
+    private static class Link {
+
+        private final Object parent;
+        private final Object key;
+
+        private Link(Object parent, Object key) {
+            this.parent = parent;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Link)) {
+                return false;
+            }
+            Link link = (Link) o;
+            return parent == link.parent && key.equals(link.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(parent) + key.hashCode();
+        }
+    }
+}
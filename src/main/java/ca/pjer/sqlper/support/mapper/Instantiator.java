@@ -0,0 +1,7 @@
+package ca.pjer.sqlper.support.mapper;
+
+public abstract class Instantiator<T> {
+
+    public abstract T newInstance() throws Exception;
+
+}
@@ -1,5 +1,7 @@
 package ca.pjer.sqlper.support.mapper;
 
+import ca.pjer.sqlper.MappingMetaData;
+
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -16,6 +18,8 @@ public class JDBCScalarMapper extends ScalarMapper<Object> {
     protected void set(PreparedStatement statement, int column, Object object, int sqlType) throws SQLException {
         if (object == null) {
             statement.setNull(column, sqlType);
+        } else if (sqlType == MappingMetaData.UNKNOWN_SQL_TYPE) {
+            statement.setObject(column, object);
         } else {
             statement.setObject(column, object, sqlType);
         }
@@ -0,0 +1,139 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Exports rows as JSON lines: one object per line, keyed by column name.
+ * Numbers and booleans are JSON literals, binary values are hexadecimal strings, all other values are strings.
+ * <pre>
+ * sqlper.collect("SELECT * FROM ITEM", new JsonLinesCollector(outputStream));
+ * </pre>
+ */
+public class JsonLinesCollector extends ExportCollector {
+
+    // the escaped key of each column, with its separators
+    private String[] keys;
+
+    public JsonLinesCollector(Writer writer) {
+        super(writer);
+    }
+
+    /**
+     * Write UTF-8 to the stream.
+     */
+    public JsonLinesCollector(OutputStream outputStream) {
+        super(outputStream, Charset.forName("UTF-8"));
+    }
+
+    @Override
+    protected void start(String[] names) throws IOException {
+        keys = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            StringBuilder key = new StringBuilder();
+            key.append(i == 0 ? "{\"" : ",\"");
+            escape(key, names[i]);
+            key.append("\":");
+            keys[i] = key.toString();
+        }
+    }
+
+    @Override
+    protected void beginRow() throws IOException {
+        if (keys.length == 0) {
+            writer.write('{');
+        }
+    }
+
+    @Override
+    protected void beginColumn(int index) throws IOException {
+        writer.write(keys[index]);
+    }
+
+    @Override
+    protected void endRow() throws IOException {
+        writer.write("}\n");
+    }
+
+    @Override
+    protected void writeNull() throws IOException {
+        writer.write("null");
+    }
+
+    @Override
+    protected void writeText(String value) throws IOException {
+        writer.write('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                writer.write(value, start, i - start);
+                writeEscape(writer, c);
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+
+    @Override
+    protected void writeEscaped(char[] chars, int length) throws IOException {
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 0x20 || c == '"' || c == '\\') {
+                writer.write(chars, start, i - start);
+                writeEscape(writer, c);
+                start = i + 1;
+            }
+        }
+        writer.write(chars, start, length - start);
+    }
+
+    private static void writeEscape(Appendable out, char c) throws IOException {
+        switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                out.append(c < 0x10 ? "\\u000" : "\\u001");
+                out.append(Character.forDigit(c & 0xF, 16));
+        }
+    }
+
+    private static void escape(StringBuilder builder, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                writeEscape(builder, c);
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    @Override
+    protected void beginBinary() throws IOException {
+        writer.write('"');
+    }
+
+    @Override
+    protected void endBinary() throws IOException {
+        writer.write('"');
+    }
+}
@@ -2,19 +2,16 @@ package ca.pjer.sqlper.support.mapper;
 
 import ca.pjer.sqlper.MappingMetaData;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ListObjectMapper extends ObjectMapper<List> {
 
     @Override
     protected List newInstance(MappingMetaData metaData, Class<List> type) throws Exception {
-        List object;
         if (type.isInterface()) {
-            object = new ArrayList(metaData.getCount());
-        } else {
-            object = type.getConstructor(int.class).newInstance(metaData.getCount());
+            return new RowList(metaData.getCount());
         }
+        List object = type.getConstructor(int.class).newInstance(metaData.getCount());
         for (int i = 0; i < metaData.getCount(); i++) {
             object.add(null);
         }
@@ -0,0 +1,73 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.SqlperException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams large binary or character values to and from the database, without holding them in memory.
+ * An {@link InputStream} or a {@link ReadableByteChannel} parameter is bound with setBinaryStream
+ * (with its remaining length for a {@link FileChannel}), a {@link Reader} with setCharacterStream.
+ * A column mapped to one of these types is read from the driver stream of the current row,
+ * so it is only valid until the cursor moves: use it with {@link ca.pjer.sqlper.Sqlper#iterate} or a collector.
+ */
+public class LobStreamMapper extends ScalarMapper<Object> {
+
+    private final Class streamType;
+
+    public LobStreamMapper(Class streamType) {
+        if (streamType != InputStream.class && streamType != Reader.class && streamType != ReadableByteChannel.class) {
+            throw new IllegalArgumentException("Unsupported stream type " + streamType);
+        }
+        this.streamType = streamType;
+    }
+
+    public Class getStreamType() {
+        return streamType;
+    }
+
+    @Override
+    protected void set(PreparedStatement statement, int column, Object object, int sqlType) throws SQLException {
+        if (object == null) {
+            statement.setNull(column, sqlType == MappingMetaData.UNKNOWN_SQL_TYPE ? java.sql.Types.NULL : sqlType);
+        } else if (object instanceof InputStream) {
+            statement.setBinaryStream(column, (InputStream) object);
+        } else if (object instanceof Reader) {
+            statement.setCharacterStream(column, (Reader) object);
+        } else if (object instanceof FileChannel) {
+            FileChannel channel = (FileChannel) object;
+            long length;
+            try {
+                length = channel.size() - channel.position();
+            } catch (IOException e) {
+                throw new SqlperException("Unable to get the remaining length of " + channel, e);
+            }
+            statement.setBinaryStream(column, Channels.newInputStream(channel), length);
+        } else if (object instanceof ReadableByteChannel) {
+            statement.setBinaryStream(column, Channels.newInputStream((ReadableByteChannel) object));
+        } else {
+            throw new SqlperException("Unable to stream a value of type " + object.getClass());
+        }
+    }
+
+    @Override
+    protected Object get(ResultSet resultSet, int column, Class type, int sqlType) throws SQLException {
+        if (streamType == Reader.class) {
+            return resultSet.getCharacterStream(column);
+        }
+        InputStream inputStream = resultSet.getBinaryStream(column);
+        if (streamType == ReadableByteChannel.class) {
+            return inputStream != null ? Channels.newChannel(inputStream) : null;
+        }
+        return inputStream;
+    }
+}
@@ -1,16 +1,19 @@
 package ca.pjer.sqlper.support.mapper;
 
 import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.support.cache.Cache;
+import ca.pjer.sqlper.support.cache.WeakCache;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.*;
 
 public class MapObjectMapper extends ObjectMapper<Map> {
 
     private final Comparator<String> keyComparator;
 
+    // shared by the rows of a result set, keyed by its meta data as the plans are
+    private final Cache<MappingMetaData, ColumnIndex> columnIndexCache = new WeakCache<>();
+    private volatile ColumnIndex lastColumnIndex;
+
     public MapObjectMapper() {
         this(null);
     }
@@ -21,6 +24,9 @@ public class MapObjectMapper extends ObjectMapper<Map> {
 
     @Override
     protected Map newInstance(MappingMetaData metaData, Class<Map> type) throws Exception {
+        if (type == Map.class && keyComparator == UpperUnderscoreComparator.INSTANCE) {
+            return new RowMap(getColumnIndex(metaData));
+        }
         if (type.isInterface()) {
             return keyComparator != null ? new TreeMap<>(keyComparator) : new HashMap(metaData.getCount());
         }
@@ -28,6 +34,27 @@ public class MapObjectMapper extends ObjectMapper<Map> {
         return type.getConstructor(int.class).newInstance(metaData.getCount());
     }
 
+    private ColumnIndex getColumnIndex(MappingMetaData metaData) {
+        ColumnIndex columnIndex = lastColumnIndex;
+        if (columnIndex != null && columnIndex.isFor(metaData.getNames())) {
+            return columnIndex;
+        }
+        columnIndex = columnIndexCache.get(metaData);
+        if (columnIndex == null || !columnIndex.isFor(metaData.getNames())) {
+            columnIndex = new ColumnIndex(metaData.getNames());
+            columnIndexCache.put(metaData, columnIndex);
+        }
+        lastColumnIndex = columnIndex;
+        return columnIndex;
+    }
+
+    @Override
+    public void clearPlans() {
+        super.clearPlans();
+        columnIndexCache.clear();
+        lastColumnIndex = null;
+    }
+
     @Override
     protected Class getPropertyType(MappingMetaData metaData, Map object, String name, int index) throws Exception {
         Object value = object.get(name);
@@ -41,6 +68,11 @@ public class MapObjectMapper extends ObjectMapper<Map> {
 
     @Override
     protected void setPropertyValue(MappingMetaData metaData, Map object, String name, int index, Object value) throws Exception {
+        if (object instanceof RowMap && metaData != null && ((RowMap) object).getColumnIndex().isFor(metaData.getNames())) {
+            // a row of this result set, set by column without looking up its name
+            ((RowMap) object).setColumn(index, value);
+            return;
+        }
         object.put(name, value);
     }
 }
@@ -0,0 +1,156 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.SqlperException;
+
+import java.lang.invoke.MethodHandle;
+
+public class MethodHandlePropertyAccessor<T> extends PropertyAccessor<T> {
+
+    private final Class type;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final MethodHandle primitiveSetter;
+
+    /**
+     * @param getter a handle of type (Object)Object, or null if the property is not readable
+     * @param setter a handle of type (Object,Object)void, or null if the property is not writable
+     * @param primitiveSetter a handle of type (Object,type)void if type is primitive, or null
+     */
+    public MethodHandlePropertyAccessor(String name, Class type, MethodHandle getter, MethodHandle setter, MethodHandle primitiveSetter) {
+        super(name);
+        this.type = type;
+        this.getter = getter;
+        this.setter = setter;
+        this.primitiveSetter = primitiveSetter;
+    }
+
+    @Override
+    public Class getType() {
+        return type;
+    }
+
+    @Override
+    public Object get(T object) throws Exception {
+        if (getter == null) {
+            throw new SqlperException("Property " + getName() + " is not readable");
+        }
+        try {
+            return (Object) getter.invokeExact((Object) object);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void set(T object, Object value) throws Exception {
+        if (setter == null) {
+            throw new SqlperException("Property " + getName() + " is not writable");
+        }
+        try {
+            setter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setBoolean(T object, boolean value) throws Exception {
+        if (primitiveSetter == null || type != Boolean.TYPE) {
+            super.setBoolean(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setByte(T object, byte value) throws Exception {
+        if (primitiveSetter == null || type != Byte.TYPE) {
+            super.setByte(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setShort(T object, short value) throws Exception {
+        if (primitiveSetter == null || type != Short.TYPE) {
+            super.setShort(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setInt(T object, int value) throws Exception {
+        if (primitiveSetter == null || type != Integer.TYPE) {
+            super.setInt(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setLong(T object, long value) throws Exception {
+        if (primitiveSetter == null || type != Long.TYPE) {
+            super.setLong(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setFloat(T object, float value) throws Exception {
+        if (primitiveSetter == null || type != Float.TYPE) {
+            super.setFloat(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    @Override
+    public void setDouble(T object, double value) throws Exception {
+        if (primitiveSetter == null || type != Double.TYPE) {
+            super.setDouble(object, value);
+            return;
+        }
+        try {
+            primitiveSetter.invokeExact((Object) object, value);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static Exception rethrow(Throwable t) throws Exception {
+        if (t instanceof Exception) {
+            return (Exception) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new Exception(t);
+    }
+}
@@ -0,0 +1,101 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class MethodHandlePropertyAccessorFactory implements PropertyAccessorFactory {
+
+    public static final PropertyAccessorFactory INSTANCE = new MethodHandlePropertyAccessorFactory();
+
+    private static final MethodType INSTANTIATOR_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    @Override
+    public <T> Instantiator<T> createInstantiator(Class<T> type) throws Exception {
+        Constructor<T> constructor = type.getConstructor();
+        MethodHandle handle = unreflectConstructor(constructor);
+        if (handle == null) {
+            return ReflectionPropertyAccessorFactory.INSTANCE.createInstantiator(type);
+        }
+        return new MethodHandleInstantiator<>(handle.asType(INSTANTIATOR_TYPE));
+    }
+
+    @Override
+    public <T> PropertyAccessor<T> createPropertyAccessor(Class<T> type, PropertyDescriptor propertyDescriptor) throws Exception {
+        Method readMethod = propertyDescriptor.getReadMethod();
+        Method writeMethod = propertyDescriptor.getWriteMethod();
+        MethodHandle getter = readMethod != null ? unreflect(readMethod) : null;
+        MethodHandle setter = writeMethod != null ? unreflect(writeMethod) : null;
+        if ((readMethod != null && getter == null) || (writeMethod != null && setter == null)) {
+            return ReflectionPropertyAccessorFactory.INSTANCE.createPropertyAccessor(type, propertyDescriptor);
+        }
+        Class propertyType = propertyDescriptor.getPropertyType();
+        MethodHandle primitiveSetter = null;
+        if (setter != null && propertyType.isPrimitive()) {
+            primitiveSetter = setter.asType(MethodType.methodType(void.class, Object.class, propertyType));
+        }
+        return new MethodHandlePropertyAccessor<>(propertyDescriptor.getName(), propertyType,
+                getter != null ? getter.asType(GETTER_TYPE) : null,
+                setter != null ? setter.asType(SETTER_TYPE) : null,
+                primitiveSetter);
+    }
+
+    private MethodHandle unreflect(Method method) {
+        try {
+            return lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            try {
+                method.setAccessible(true);
+                return lookup.unreflect(method);
+            } catch (Exception e2) {
+                logger.log(Level.FINE, "Unable to get a method handle for {0}, reflection will be used", method);
+                return null;
+            }
+        }
+    }
+
+    private MethodHandle unreflectConstructor(Constructor constructor) {
+        try {
+            return lookup.unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            try {
+                constructor.setAccessible(true);
+                return lookup.unreflectConstructor(constructor);
+            } catch (Exception e2) {
+                logger.log(Level.FINE, "Unable to get a method handle for {0}, reflection will be used", constructor);
+                return null;
+            }
+        }
+    }
+
+    private static class MethodHandleInstantiator<T> extends Instantiator<T> {
+
+        private final MethodHandle handle;
+
+        private MethodHandleInstantiator(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public T newInstance() throws Exception {
+            try {
+                return (T) (Object) handle.invokeExact();
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new Exception(t);
+            }
+        }
+    }
+}
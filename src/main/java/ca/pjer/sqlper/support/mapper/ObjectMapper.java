@@ -4,38 +4,335 @@ import ca.pjer.sqlper.Mapper;
 import ca.pjer.sqlper.MapperRegistry;
 import ca.pjer.sqlper.MappingMetaData;
 import ca.pjer.sqlper.SqlperException;
+import ca.pjer.sqlper.support.cache.Cache;
+import ca.pjer.sqlper.support.cache.WeakCache;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.nio.channels.Channel;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public abstract class ObjectMapper<T> implements Mapper<T> {
+public abstract class ObjectMapper<T> implements Mapper<T>, PlanCache {
+
+    // a parameter value that cannot be part of a cached query result key
+    private static final Object NOT_A_KEY = new Object();
+
+    private final Cache<MappingMetaData, Map<Class, ResultSetPlan<T>>> resultSetPlanCache = new WeakCache<>();
+    private volatile LastPlan<ResultSetPlan<T>> lastResultSetPlan;
+
+    private final Cache<MappingMetaData, Map<Class, BindingPlan<T>>> bindingPlanCache = new WeakCache<>();
+    private volatile LastPlan<BindingPlan<T>> lastBindingPlan;
+
+    // keyed by the parameter names of a ParsedSql, compared by identity
+    private final Cache<String[], Map<Class, ExpansionPlan<T>>> expansionPlanCache = new WeakCache<>();
+    private final Cache<String[], Map<Class, PropertyAccessor<T>[]>> valuesPlanCache = new WeakCache<>();
 
     @Override
     public void map(MapperRegistry mapperRegistry, PreparedStatement preparedStatement, MappingMetaData metaData, int index, Class<T> type, T object) {
-        for (int i = index; i < metaData.getCount(); i++) {
-            String name = metaData.getNames()[i];
-            Object value = getPropertyValueOrThrow(metaData, object, name, i);
-            Class valueType = getPropertyTypeOrThrow(metaData, object, name, i);
-            Mapper valueMapper = mapperRegistry.find(valueType);
+        BindingPlan<T> plan = getBindingPlan(mapperRegistry, metaData, (Class<T>) object.getClass());
+        PropertyAccessor<T>[] accessors = plan.accessors;
+        Object elements = null;
+        for (int i = index; i < accessors.length; i++) {
+            Object value;
+            if (plan.elementIndexes[i] < 0) {
+                value = getPropertyValueOrThrow(accessors[i], object);
+            } else {
+                // the elements of a parameter are consecutive, read and convert it once for all of them
+                if (plan.elementIndexes[i] == 0 || i == index) {
+                    elements = toElements(getPropertyValueOrThrow(accessors[i], object));
+                }
+                value = getElement(elements, plan.elementIndexes[i]);
+            }
+            Class valueType = plan.valueTypes[i];
+            Mapper valueMapper = plan.valueMappers[i];
+            if (valueMapper == null) {
+                // the type of an undeclared property is the one of its value, remember the last one
+                valueType = value == null ? null : value.getClass();
+                TypedMapper typedMapper = plan.lastValueMappers[i];
+                if (typedMapper == null || typedMapper.type != valueType) {
+                    typedMapper = new TypedMapper(valueType, mapperRegistry.find(valueType));
+                    plan.lastValueMappers[i] = typedMapper;
+                }
+                valueMapper = typedMapper.mapper;
+            }
             valueMapper.map(mapperRegistry, preparedStatement, metaData, i, valueType, value);
         }
     }
 
+    /**
+     * Find the named parameters bound to a collection or an array (other than byte[]), before the statement is prepared.
+     *
+     * @return the number of elements of each parameter, -1 for a parameter that is not a collection, or null if there is none
+     */
+    public int[] getElementCounts(String[] names, T object) {
+        ExpansionPlan<T> plan = getExpansionPlan(names, (Class<T>) object.getClass());
+        if (plan == null) {
+            return null;
+        }
+        int[] elementCounts = null;
+        for (int i = 0; i < names.length; i++) {
+            if (plan.accessors[i] == null) {
+                continue;
+            }
+            int elementCount = getElementCount(getPropertyValueOrThrow(plan.accessors[i], object));
+            if (elementCount >= 0) {
+                if (elementCounts == null) {
+                    elementCounts = new int[names.length];
+                    Arrays.fill(elementCounts, -1);
+                }
+                elementCounts[i] = elementCount;
+            }
+        }
+        return elementCounts;
+    }
+
+    /**
+     * Read the values of the named parameters without a statement, as the key of a cached query result.
+     * Collections and arrays are copied into new arrays (deeply), dates and calendars are cloned,
+     * so the caller changing them afterward does not change the key.
+     *
+     * @return the values, or null if one cannot be part of a key (as a stream or a LOB)
+     */
+    public Object[] getParameterValues(String[] names, T object) {
+        PropertyAccessor<T>[] accessors = getValuesPlan(names, (Class<T>) object.getClass());
+        Object[] values = new Object[accessors.length];
+        for (int i = 0; i < accessors.length; i++) {
+            Object value = copyKeyValue(getPropertyValueOrThrow(accessors[i], object));
+            if (value == NOT_A_KEY) {
+                return null;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static Object copyKeyValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Collection) {
+            value = ((Collection) value).toArray();
+        }
+        if (value instanceof Object[]) {
+            Object[] elements = ((Object[]) value).clone();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = copyKeyValue(elements[i]);
+                if (elements[i] == NOT_A_KEY) {
+                    return NOT_A_KEY;
+                }
+            }
+            return elements;
+        }
+        if (value.getClass().isArray()) {
+            // an array of primitives
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).clone();
+        }
+        if (value instanceof InputStream || value instanceof Reader || value instanceof Channel
+                || value instanceof Blob || value instanceof Clob) {
+            return NOT_A_KEY;
+        }
+        return value;
+    }
+
+    private PropertyAccessor<T>[] getValuesPlan(String[] names, Class<T> type) {
+        Map<Class, PropertyAccessor<T>[]> plans = valuesPlanCache.get(names);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<>();
+            valuesPlanCache.put(names, plans);
+        }
+        PropertyAccessor<T>[] accessors = plans.get(type);
+        if (accessors == null) {
+            accessors = new PropertyAccessor[names.length];
+            for (int i = 0; i < names.length; i++) {
+                accessors[i] = getPropertyAccessorOrThrow(null, type, names[i], i);
+            }
+            plans.put(type, accessors);
+        }
+        return accessors;
+    }
+
+    protected static int getElementCount(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection) value).size();
+        }
+        if (value != null && value.getClass().isArray() && !(value instanceof byte[])) {
+            return Array.getLength(value);
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value as is if its elements can be read by index (a random access List or an array),
+     * else the array of its elements
+     */
+    protected static Object toElements(Object value) {
+        if (value instanceof Collection && !(value instanceof List && value instanceof RandomAccess)) {
+            return ((Collection) value).toArray();
+        }
+        return value;
+    }
+
+    /**
+     * @param elements a value converted by {@link #toElements(Object)}
+     * @return the element at index, the last element if the index is past the end (bucket padding), or null if there is none
+     */
+    protected static Object getElement(Object elements, int index) {
+        int count = getElementCount(elements);
+        if (count <= 0) {
+            return null;
+        }
+        index = Math.min(index, count - 1);
+        if (elements instanceof List) {
+            return ((List) elements).get(index);
+        }
+        return Array.get(elements, index);
+    }
+
     @Override
     public T map(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData, int index, Class<T> type, T object) {
+        ResultSetPlan<T> plan;
+        Class[] valueTypes;
+        Mapper[] valueMappers;
         if (object == null) {
-            object = newInstanceOrThrow(metaData, type);
+            plan = getResultSetPlan(mapperRegistry, metaData, type);
+            CreatedPlan<T> createdPlan = plan.createdPlan;
+            if (createdPlan == null) {
+                createdPlan = plan.resolveCreatedPlan(this, mapperRegistry, metaData, type);
+            }
+            object = newInstanceOrThrow(createdPlan.instantiator, type);
+            valueTypes = createdPlan.valueTypes;
+            valueMappers = createdPlan.valueMappers;
+        } else {
+            plan = getResultSetPlan(mapperRegistry, metaData, (Class<T>) object.getClass());
+            valueTypes = plan.valueTypes;
+            valueMappers = plan.valueMappers;
         }
-        for (int i = index; i < metaData.getCount(); i++) {
-            String name = metaData.getNames()[i];
-            Class valueType = getPropertyTypeOrThrow(metaData, object, name, i);
-            Mapper valueMapper = mapperRegistry.find(valueType);
+        PropertyAccessor<T>[] accessors = plan.accessors;
+        PrimitiveScalarMapper[] primitiveMappers = plan.primitiveMappers;
+        for (int i = index; i < accessors.length; i++) {
+            if (accessors[i] == null) {
+                continue;
+            }
+            if (primitiveMappers[i] != null) {
+                setPrimitivePropertyValueOrThrow(primitiveMappers[i], resultSet, metaData, i, accessors[i], object);
+                continue;
+            }
+            Class valueType = valueTypes[i];
+            Mapper valueMapper = valueMappers[i];
+            if (valueMapper == null) {
+                valueType = getPropertyTypeOrThrow(metaData, object, accessors[i].getName(), i);
+                valueMapper = mapperRegistry.find(valueType);
+            }
             Object value = valueMapper.map(mapperRegistry, resultSet, metaData, i, valueType, null);
-            setPropertyValueOrThrow(metaData, object, name, i, value);
+            setPropertyValueOrThrow(accessors[i], object, value);
         }
         return object;
     }
 
+    protected ResultSetPlan<T> getResultSetPlan(MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+        LastPlan<ResultSetPlan<T>> last = lastResultSetPlan;
+        if (last != null && last.metaData == metaData && last.type == type && last.mapperRegistry == mapperRegistry) {
+            return last.plan;
+        }
+        Map<Class, ResultSetPlan<T>> plans = resultSetPlanCache.get(metaData);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<>();
+            resultSetPlanCache.put(metaData, plans);
+        }
+        ResultSetPlan<T> plan = plans.get(type);
+        if (plan == null || plan.mapperRegistry != mapperRegistry) {
+            plan = new ResultSetPlan<>(this, mapperRegistry, metaData, type);
+            plans.put(type, plan);
+        }
+        lastResultSetPlan = new LastPlan<>(metaData, type, mapperRegistry, plan);
+        return plan;
+    }
+
+    protected BindingPlan<T> getBindingPlan(MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+        LastPlan<BindingPlan<T>> last = lastBindingPlan;
+        if (last != null && last.metaData == metaData && last.type == type && last.mapperRegistry == mapperRegistry) {
+            return last.plan;
+        }
+        Map<Class, BindingPlan<T>> plans = bindingPlanCache.get(metaData);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<>();
+            bindingPlanCache.put(metaData, plans);
+        }
+        BindingPlan<T> plan = plans.get(type);
+        if (plan == null || plan.mapperRegistry != mapperRegistry) {
+            plan = new BindingPlan<>(this, mapperRegistry, metaData, type);
+            plans.put(type, plan);
+        }
+        lastBindingPlan = new LastPlan<>(metaData, type, mapperRegistry, plan);
+        return plan;
+    }
+
+    private ExpansionPlan<T> getExpansionPlan(String[] names, Class<T> type) {
+        Map<Class, ExpansionPlan<T>> plans = expansionPlanCache.get(names);
+        if (plans == null) {
+            plans = new ConcurrentHashMap<>();
+            expansionPlanCache.put(names, plans);
+        }
+        ExpansionPlan<T> plan = plans.get(type);
+        if (plan == null) {
+            plan = new ExpansionPlan<>(this, names, type);
+            plans.put(type, plan);
+        }
+        return plan.accessors != null ? plan : null;
+    }
+
+    @Override
+    public void clearPlans() {
+        resultSetPlanCache.clear();
+        lastResultSetPlan = null;
+        bindingPlanCache.clear();
+        lastBindingPlan = null;
+        expansionPlanCache.clear();
+        valuesPlanCache.clear();
+    }
+
+    protected PropertyAccessor<T> getPropertyAccessor(MappingMetaData metaData, Class<T> type, String name, int index) throws Exception {
+        return new DefaultPropertyAccessor(metaData, name, index);
+    }
+
+    protected Instantiator<T> getInstantiator(MappingMetaData metaData, Class<T> type) throws Exception {
+        return new DefaultInstantiator(metaData, type);
+    }
+
+    protected Instantiator<T> getInstantiatorOrThrow(MappingMetaData metaData, Class<T> type) {
+        try {
+            return getInstantiator(metaData, type);
+        } catch (Exception e) {
+            throw new SqlperException("Unable to create instance of " + type, e);
+        }
+    }
+
+    protected PropertyAccessor<T> getPropertyAccessorOrThrow(MappingMetaData metaData, Class<T> type, String name, int index) {
+        try {
+            return getPropertyAccessor(metaData, type, name, index);
+        } catch (SqlperException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SqlperException("Unable to get accessor for property name '" + name + "' of type '" + type + "'", e);
+        }
+    }
+
     protected T newInstanceOrThrow(MappingMetaData metaData, Class<T> type) {
         try {
             return newInstance(metaData, type);
@@ -44,6 +341,14 @@ public abstract class ObjectMapper<T> implements Mapper<T> {
         }
     }
 
+    protected T newInstanceOrThrow(Instantiator<T> instantiator, Class<T> type) {
+        try {
+            return instantiator.newInstance();
+        } catch (Exception e) {
+            throw new SqlperException("Unable to create instance of " + type, e);
+        }
+    }
+
     protected Class getPropertyTypeOrThrow(MappingMetaData metaData, T object, String name, int index) {
         try {
             return getPropertyType(metaData, object, name, index);
@@ -52,6 +357,14 @@ public abstract class ObjectMapper<T> implements Mapper<T> {
         }
     }
 
+    protected Object getPropertyValueOrThrow(PropertyAccessor<T> accessor, T object) {
+        try {
+            return accessor.get(object);
+        } catch (Exception e) {
+            throw new SqlperException("Unable to get value from property name '" + accessor.getName() + "' of object '" + object + "' type '" + object.getClass() + "'", e);
+        }
+    }
+
     protected Object getPropertyValueOrThrow(MappingMetaData metaData, T object, String name, int index) {
         try {
             return getPropertyValue(metaData, object, name, index);
@@ -68,6 +381,24 @@ public abstract class ObjectMapper<T> implements Mapper<T> {
         }
     }
 
+    protected void setPropertyValueOrThrow(PropertyAccessor<T> accessor, T object, Object value) {
+        try {
+            accessor.set(object, value);
+        } catch (Exception e) {
+            throw new SqlperException("Unable to set value '" + value + "' type '" + (value != null ? value.getClass() : "null") + "' into property name '" + accessor.getName() + "' of object '" + object + "' type '" + object.getClass() + "'", e);
+        }
+    }
+
+    protected void setPrimitivePropertyValueOrThrow(PrimitiveScalarMapper primitiveMapper, ResultSet resultSet, MappingMetaData metaData, int index, PropertyAccessor<T> accessor, T object) {
+        try {
+            primitiveMapper.map(resultSet, metaData, index, accessor, object);
+        } catch (SqlperException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SqlperException("Unable to set column '" + (index + 1) + "' into primitive property name '" + accessor.getName() + "' of object '" + object + "' type '" + object.getClass() + "'", e);
+        }
+    }
+
     protected abstract T newInstance(MappingMetaData metaData, Class<T> type) throws Exception;
 
     protected abstract Class getPropertyType(MappingMetaData metaData, T object, String name, int index) throws Exception;
@@ -76,4 +407,220 @@ public abstract class ObjectMapper<T> implements Mapper<T> {
 
     protected abstract void setPropertyValue(MappingMetaData metaData, T object, String name, int index, Object value) throws Exception;
 
+    /**
+     * What is invariant while mapping rows of a given result set shape into a given type:
+     * the accessor of each column, and its value mapper when the property type is declared.
+     */
+    protected static class ResultSetPlan<T> {
+
+        private final MapperRegistry mapperRegistry;
+        private final PropertyAccessor<T>[] accessors;
+        private final Class[] valueTypes;
+        private final Mapper[] valueMappers;
+        private final PrimitiveScalarMapper[] primitiveMappers;
+        private final boolean dynamic;
+
+        private volatile CreatedPlan<T> createdPlan;
+
+        private ResultSetPlan(ObjectMapper<T> objectMapper, MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+            this.mapperRegistry = mapperRegistry;
+            int count = metaData.getCount();
+            accessors = new PropertyAccessor[count];
+            valueTypes = new Class[count];
+            valueMappers = new Mapper[count];
+            primitiveMappers = new PrimitiveScalarMapper[count];
+            boolean dynamic = false;
+            for (int i = 0; i < count; i++) {
+                if (metaData.getNames()[i] == null) {
+                    // a column left out of this mapping, as one of another type of a GraphMapping
+                    continue;
+                }
+                accessors[i] = objectMapper.getPropertyAccessorOrThrow(metaData, type, metaData.getNames()[i], i);
+                Class valueType = accessors[i].getType();
+                if (valueType != null) {
+                    valueTypes[i] = valueType;
+                    valueMappers[i] = mapperRegistry.find(valueType);
+                    if (valueType.isPrimitive() && valueMappers[i] instanceof PrimitiveScalarMapper
+                            && ((PrimitiveScalarMapper) valueMappers[i]).getPrimitiveType() == valueType) {
+                        primitiveMappers[i] = (PrimitiveScalarMapper) valueMappers[i];
+                    }
+                } else {
+                    dynamic = true;
+                }
+            }
+            this.dynamic = dynamic;
+        }
+
+        private CreatedPlan<T> resolveCreatedPlan(ObjectMapper<T> objectMapper, MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+            Instantiator<T> instantiator = objectMapper.getInstantiatorOrThrow(metaData, type);
+            Class[] types = valueTypes;
+            Mapper[] mappers = valueMappers;
+            if (dynamic) {
+                // the type of an undeclared property is the one of the value found in a new instance
+                T object = objectMapper.newInstanceOrThrow(instantiator, type);
+                types = types.clone();
+                mappers = mappers.clone();
+                for (int i = 0; i < accessors.length; i++) {
+                    if (mappers[i] == null && accessors[i] != null) {
+                        types[i] = objectMapper.getPropertyTypeOrThrow(metaData, object, accessors[i].getName(), i);
+                        mappers[i] = mapperRegistry.find(types[i]);
+                    }
+                }
+            }
+            CreatedPlan<T> createdPlan = new CreatedPlan<>(instantiator, types, mappers);
+            this.createdPlan = createdPlan;
+            return createdPlan;
+        }
+    }
+
+    /**
+     * What is invariant while binding the parameters of a given statement from a given type:
+     * the accessor of each parameter, and its value mapper when the property type is declared.
+     */
+    protected static class BindingPlan<T> {
+
+        private final MapperRegistry mapperRegistry;
+        private final PropertyAccessor<T>[] accessors;
+        private final int[] elementIndexes;
+        private final Class[] valueTypes;
+        private final Mapper[] valueMappers;
+        private final TypedMapper[] lastValueMappers;
+
+        private BindingPlan(ObjectMapper<T> objectMapper, MapperRegistry mapperRegistry, MappingMetaData metaData, Class<T> type) {
+            this.mapperRegistry = mapperRegistry;
+            int count = metaData.getCount();
+            accessors = new PropertyAccessor[count];
+            elementIndexes = new int[count];
+            valueTypes = new Class[count];
+            valueMappers = new Mapper[count];
+            lastValueMappers = new TypedMapper[count];
+            for (int i = 0; i < count; i++) {
+                String name = metaData.getNames()[i];
+                int bracket = name != null ? name.indexOf('[') : -1;
+                elementIndexes[i] = -1;
+                if (bracket > 0) {
+                    // an element of an expanded collection parameter, see ExpandedParsedSql
+                    elementIndexes[i] = Integer.parseInt(name.substring(bracket + 1, name.length() - 1));
+                    name = name.substring(0, bracket);
+                }
+                accessors[i] = objectMapper.getPropertyAccessorOrThrow(metaData, type, name, i);
+                Class valueType = accessors[i].getType();
+                if (valueType != null && elementIndexes[i] < 0) {
+                    valueTypes[i] = valueType;
+                    valueMappers[i] = mapperRegistry.find(valueType);
+                }
+            }
+        }
+    }
+
+    /**
+     * The accessors of the named parameters that may be bound to a collection,
+     * or no accessors at all if none can be.
+     */
+    private static class ExpansionPlan<T> {
+
+        private final PropertyAccessor<T>[] accessors;
+
+        private ExpansionPlan(ObjectMapper<T> objectMapper, String[] names, Class<T> type) {
+            PropertyAccessor<T>[] accessors = new PropertyAccessor[names.length];
+            boolean expandable = false;
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] == null) {
+                    continue;
+                }
+                PropertyAccessor<T> accessor = objectMapper.getPropertyAccessorOrThrow(null, type, names[i], i);
+                Class valueType = accessor.getType();
+                if (valueType == null || valueType.isAssignableFrom(Collection.class) || Collection.class.isAssignableFrom(valueType)
+                        || (valueType.isArray() && valueType != byte[].class)) {
+                    accessors[i] = accessor;
+                    expandable = true;
+                }
+            }
+            this.accessors = expandable ? accessors : null;
+        }
+    }
+
+    private static class TypedMapper {
+
+        private final Class type;
+        private final Mapper mapper;
+
+        private TypedMapper(Class type, Mapper mapper) {
+            this.type = type;
+            this.mapper = mapper;
+        }
+    }
+
+    private static class CreatedPlan<T> {
+
+        private final Instantiator<T> instantiator;
+        private final Class[] valueTypes;
+        private final Mapper[] valueMappers;
+
+        private CreatedPlan(Instantiator<T> instantiator, Class[] valueTypes, Mapper[] valueMappers) {
+            this.instantiator = instantiator;
+            this.valueTypes = valueTypes;
+            this.valueMappers = valueMappers;
+        }
+    }
+
+    private static class LastPlan<P> {
+
+        private final MappingMetaData metaData;
+        private final Class type;
+        private final MapperRegistry mapperRegistry;
+        private final P plan;
+
+        private LastPlan(MappingMetaData metaData, Class type, MapperRegistry mapperRegistry, P plan) {
+            this.metaData = metaData;
+            this.type = type;
+            this.mapperRegistry = mapperRegistry;
+            this.plan = plan;
+        }
+    }
+
+    private class DefaultPropertyAccessor extends PropertyAccessor<T> {
+
+        // weak since plans are cached weakly by meta data
+        private final WeakReference<MappingMetaData> metaData;
+        private final int index;
+
+        private DefaultPropertyAccessor(MappingMetaData metaData, String name, int index) {
+            super(name);
+            this.metaData = new WeakReference<>(metaData);
+            this.index = index;
+        }
+
+        @Override
+        public Class getType() {
+            return null;
+        }
+
+        @Override
+        public Object get(T object) throws Exception {
+            return getPropertyValue(metaData.get(), object, getName(), index);
+        }
+
+        @Override
+        public void set(T object, Object value) throws Exception {
+            setPropertyValue(metaData.get(), object, getName(), index, value);
+        }
+    }
+
+    private class DefaultInstantiator extends Instantiator<T> {
+
+        // weak since plans are cached weakly by meta data
+        private final WeakReference<MappingMetaData> metaData;
+        private final Class<T> type;
+
+        private DefaultInstantiator(MappingMetaData metaData, Class<T> type) {
+            this.metaData = new WeakReference<>(metaData);
+            this.type = type;
+        }
+
+        @Override
+        public T newInstance() throws Exception {
+            return ObjectMapper.this.newInstance(metaData.get(), type);
+        }
+    }
 }
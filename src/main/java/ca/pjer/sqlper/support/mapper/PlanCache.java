@@ -0,0 +1,11 @@
+package ca.pjer.sqlper.support.mapper;
+
+/**
+ * Something caching what it resolved from a {@link ca.pjer.sqlper.MapperRegistry},
+ * to clear when a mapper is registered since what it resolved may have changed.
+ */
+public interface PlanCache {
+
+    void clearPlans();
+
+}
@@ -0,0 +1,160 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.SqlperException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Maps a primitive (or its wrapper) with the typed JDBC getters and setters
+ * when the column is an integer, floating point or boolean, instead of getObject/setObject.
+ * An integral primitive uses them only with an integer or boolean column.
+ */
+public class PrimitiveScalarMapper extends ScalarMapper<Object> {
+
+    private final Class primitiveType;
+
+    public PrimitiveScalarMapper(Class primitiveType) {
+        if (!primitiveType.isPrimitive() || primitiveType == Void.TYPE || primitiveType == Character.TYPE) {
+            throw new IllegalArgumentException("Unsupported primitive type " + primitiveType);
+        }
+        this.primitiveType = primitiveType;
+    }
+
+    public Class getPrimitiveType() {
+        return primitiveType;
+    }
+
+    @Override
+    protected void set(PreparedStatement statement, int column, Object object, int sqlType) throws SQLException {
+        if (object == null) {
+            statement.setNull(column, sqlType);
+        } else if (sqlType == MappingMetaData.UNKNOWN_SQL_TYPE) {
+            statement.setObject(column, object);
+        } else if (!isNumeric(sqlType)) {
+            statement.setObject(column, object, sqlType);
+        } else if (primitiveType == Integer.TYPE) {
+            statement.setInt(column, ((Number) object).intValue());
+        } else if (primitiveType == Long.TYPE) {
+            statement.setLong(column, ((Number) object).longValue());
+        } else if (primitiveType == Double.TYPE) {
+            statement.setDouble(column, ((Number) object).doubleValue());
+        } else if (primitiveType == Float.TYPE) {
+            statement.setFloat(column, ((Number) object).floatValue());
+        } else if (primitiveType == Short.TYPE) {
+            statement.setShort(column, ((Number) object).shortValue());
+        } else if (primitiveType == Byte.TYPE) {
+            statement.setByte(column, ((Number) object).byteValue());
+        } else {
+            statement.setBoolean(column, (Boolean) object);
+        }
+    }
+
+    @Override
+    protected Object get(ResultSet resultSet, int column, Class type, int sqlType) throws SQLException {
+        if (!isNumeric(sqlType)) {
+            return resultSet.getObject(column);
+        }
+        Object value;
+        if (primitiveType == Integer.TYPE) {
+            value = resultSet.getInt(column);
+        } else if (primitiveType == Long.TYPE) {
+            value = resultSet.getLong(column);
+        } else if (primitiveType == Double.TYPE) {
+            value = resultSet.getDouble(column);
+        } else if (primitiveType == Float.TYPE) {
+            value = resultSet.getFloat(column);
+        } else if (primitiveType == Short.TYPE) {
+            value = resultSet.getShort(column);
+        } else if (primitiveType == Byte.TYPE) {
+            value = resultSet.getByte(column);
+        } else {
+            value = resultSet.getBoolean(column);
+        }
+        return resultSet.wasNull() ? null : value;
+    }
+
+    /**
+     * Map the column straight into a primitive property, without boxing the value.
+     */
+    public <O> void map(ResultSet resultSet, MappingMetaData metaData, int index, PropertyAccessor<O> accessor, O object) throws Exception {
+        int column = index + 1;
+        int sqlType = metaData.getSqlTypes()[index];
+        if (!isNumeric(sqlType)) {
+            accessor.set(object, get(resultSet, column, primitiveType, sqlType));
+            return;
+        }
+        try {
+            if (primitiveType == Integer.TYPE) {
+                int value = resultSet.getInt(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setInt(object, value);
+                    return;
+                }
+            } else if (primitiveType == Long.TYPE) {
+                long value = resultSet.getLong(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setLong(object, value);
+                    return;
+                }
+            } else if (primitiveType == Double.TYPE) {
+                double value = resultSet.getDouble(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setDouble(object, value);
+                    return;
+                }
+            } else if (primitiveType == Float.TYPE) {
+                float value = resultSet.getFloat(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setFloat(object, value);
+                    return;
+                }
+            } else if (primitiveType == Short.TYPE) {
+                short value = resultSet.getShort(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setShort(object, value);
+                    return;
+                }
+            } else if (primitiveType == Byte.TYPE) {
+                byte value = resultSet.getByte(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setByte(object, value);
+                    return;
+                }
+            } else {
+                boolean value = resultSet.getBoolean(column);
+                if (!resultSet.wasNull()) {
+                    accessor.setBoolean(object, value);
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            throw new SqlperException("Unable to get column '" + column + "' of type '" + primitiveType + "'", e);
+        }
+        // a null into a primitive property, let the accessor complain
+        accessor.set(object, null);
+    }
+
+    protected boolean isNumeric(int sqlType) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return true;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                // getInt or getLong would silently truncate the fraction
+                return primitiveType == Double.TYPE || primitiveType == Float.TYPE || primitiveType == Boolean.TYPE;
+            // not DECIMAL nor NUMERIC, their scale would be silently truncated by a typed getter
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ca.pjer.sqlper.support.mapper;
+
+public abstract class PropertyAccessor<T> {
+
+    private final String name;
+
+    protected PropertyAccessor(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the declared type of the property, or null if it can only be known from the value of an object
+     */
+    public abstract Class getType();
+
+    public abstract Object get(T object) throws Exception;
+
+    public abstract void set(T object, Object value) throws Exception;
+
+    // primitive setters, to be overridden by accessors able to set a primitive property without boxing
+
+    public void setBoolean(T object, boolean value) throws Exception {
+        set(object, value);
+    }
+
+    public void setByte(T object, byte value) throws Exception {
+        set(object, value);
+    }
+
+    public void setShort(T object, short value) throws Exception {
+        set(object, value);
+    }
+
+    public void setInt(T object, int value) throws Exception {
+        set(object, value);
+    }
+
+    public void setLong(T object, long value) throws Exception {
+        set(object, value);
+    }
+
+    public void setFloat(T object, float value) throws Exception {
+        set(object, value);
+    }
+
+    public void setDouble(T object, double value) throws Exception {
+        set(object, value);
+    }
+
+}
@@ -0,0 +1,11 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.beans.PropertyDescriptor;
+
+public interface PropertyAccessorFactory {
+
+    <T> Instantiator<T> createInstantiator(Class<T> type) throws Exception;
+
+    <T> PropertyAccessor<T> createPropertyAccessor(Class<T> type, PropertyDescriptor propertyDescriptor) throws Exception;
+
+}
@@ -0,0 +1,41 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.SqlperException;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+
+public class ReflectionPropertyAccessor<T> extends PropertyAccessor<T> {
+
+    private final Class type;
+    private final Method readMethod;
+    private final Method writeMethod;
+
+    public ReflectionPropertyAccessor(PropertyDescriptor propertyDescriptor) {
+        super(propertyDescriptor.getName());
+        type = propertyDescriptor.getPropertyType();
+        readMethod = propertyDescriptor.getReadMethod();
+        writeMethod = propertyDescriptor.getWriteMethod();
+    }
+
+    @Override
+    public Class getType() {
+        return type;
+    }
+
+    @Override
+    public Object get(T object) throws Exception {
+        if (readMethod == null) {
+            throw new SqlperException("Property " + getName() + " is not readable");
+        }
+        return readMethod.invoke(object);
+    }
+
+    @Override
+    public void set(T object, Object value) throws Exception {
+        if (writeMethod == null) {
+            throw new SqlperException("Property " + getName() + " is not writable");
+        }
+        writeMethod.invoke(object, value);
+    }
+}
@@ -0,0 +1,25 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+
+public class ReflectionPropertyAccessorFactory implements PropertyAccessorFactory {
+
+    public static final PropertyAccessorFactory INSTANCE = new ReflectionPropertyAccessorFactory();
+
+    @Override
+    public <T> Instantiator<T> createInstantiator(Class<T> type) throws Exception {
+        final Constructor<T> constructor = type.getConstructor();
+        return new Instantiator<T>() {
+            @Override
+            public T newInstance() throws Exception {
+                return constructor.newInstance();
+            }
+        };
+    }
+
+    @Override
+    public <T> PropertyAccessor<T> createPropertyAccessor(Class<T> type, PropertyDescriptor propertyDescriptor) throws Exception {
+        return new ReflectionPropertyAccessor<>(propertyDescriptor);
+    }
+}
@@ -11,6 +11,7 @@ import java.util.*;
 public class ReflexionObjectMapper<T> extends ObjectMapper<T> {
 
     private final Comparator<String> nameComparator;
+    private final PropertyAccessorFactory propertyAccessorFactory;
     private final Map<Class, Map<String, PropertyDescriptor>> propertyDescriptorCache;
 
     public ReflexionObjectMapper() {
@@ -18,7 +19,12 @@ public class ReflexionObjectMapper<T> extends ObjectMapper<T> {
     }
 
     public ReflexionObjectMapper(Comparator<String> nameComparator) {
+        this(nameComparator, MethodHandlePropertyAccessorFactory.INSTANCE);
+    }
+
+    public ReflexionObjectMapper(Comparator<String> nameComparator, PropertyAccessorFactory propertyAccessorFactory) {
         this.nameComparator = nameComparator;
+        this.propertyAccessorFactory = propertyAccessorFactory;
         propertyDescriptorCache = Collections.synchronizedMap(new WeakHashMap<Class, Map<String, PropertyDescriptor>>());
     }
 
@@ -46,6 +52,16 @@ public class ReflexionObjectMapper<T> extends ObjectMapper<T> {
         method.invoke(object, value);
     }
 
+    @Override
+    protected Instantiator<T> getInstantiator(MappingMetaData metaData, Class<T> type) throws Exception {
+        return propertyAccessorFactory.createInstantiator(type);
+    }
+
+    @Override
+    protected PropertyAccessor<T> getPropertyAccessor(MappingMetaData metaData, Class<T> type, String name, int index) throws Exception {
+        return propertyAccessorFactory.createPropertyAccessor(type, getPropertyDescriptor(type, name));
+    }
+
     protected PropertyDescriptor getPropertyDescriptor(Class<T> type, String name) throws Exception {
         Map<String, PropertyDescriptor> props = propertyDescriptorCache.get(type);
         if (props == null) {
@@ -0,0 +1,68 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A row as a List of its column values, created with one null per column and backed by a single array.
+ * It can still grow and shrink as an ArrayList does.
+ */
+public class RowList extends AbstractList<Object> implements RandomAccess, Serializable {
+
+    private Object[] values;
+    private int size;
+
+    public RowList(int columnCount) {
+        values = new Object[columnCount];
+        size = columnCount;
+    }
+
+    @Override
+    public Object get(int index) {
+        checkIndex(index, size);
+        return values[index];
+    }
+
+    @Override
+    public Object set(int index, Object value) {
+        checkIndex(index, size);
+        Object previous = values[index];
+        values[index] = value;
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void add(int index, Object value) {
+        checkIndex(index, size + 1);
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(size * 2, 4));
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Object remove(int index) {
+        checkIndex(index, size);
+        Object previous = values[index];
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        values[--size] = null;
+        modCount++;
+        return previous;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package ca.pjer.sqlper.support.mapper;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * A row as a Map of its column values, keyed by column name ignoring case and underscores.
+ * The keys are in a {@link ColumnIndex} shared by all the rows of a result set, a row only holds its values.
+ * Keys that are not columns can still be put, they are kept aside in a TreeMap.
+ */
+public class RowMap extends AbstractMap<String, Object> implements Serializable {
+
+    private final ColumnIndex columnIndex;
+    private final Object[] values;
+    // the slots holding a value, a column is absent when removed from the row or not mapped yet
+    private final BitSet present;
+    private int size;
+    private TreeMap<String, Object> others;
+    private transient Set<Entry<String, Object>> entrySet;
+
+    public RowMap(ColumnIndex columnIndex) {
+        this.columnIndex = columnIndex;
+        values = new Object[columnIndex.getSlotCount()];
+        present = new BitSet(values.length);
+    }
+
+    public ColumnIndex getColumnIndex() {
+        return columnIndex;
+    }
+
+    /**
+     * Set the value of a column by its index in the result set.
+     */
+    void setColumn(int column, Object value) {
+        int slot = columnIndex.getSlot(column);
+        if (slot >= 0) {
+            setSlot(slot, value);
+        }
+    }
+
+    private Object setSlot(int slot, Object value) {
+        Object previous = values[slot];
+        values[slot] = value;
+        if (!present.get(slot)) {
+            present.set(slot);
+            size++;
+        }
+        return previous;
+    }
+
+    private Object removeSlot(int slot) {
+        Object previous = values[slot];
+        if (present.get(slot)) {
+            present.clear(slot);
+            values[slot] = null;
+            size--;
+        }
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return others == null ? size : size + others.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = columnIndex.indexOf(key);
+        if (slot >= 0) {
+            return present.get(slot);
+        }
+        return others != null && key instanceof String && others.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = columnIndex.indexOf(key);
+        if (slot >= 0) {
+            return values[slot];
+        }
+        return others != null && key instanceof String ? others.get(key) : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = columnIndex.indexOf(key);
+        if (slot >= 0) {
+            return setSlot(slot, value);
+        }
+        if (others == null) {
+            others = new TreeMap<>(UpperUnderscoreComparator.INSTANCE);
+        }
+        return others.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = columnIndex.indexOf(key);
+        if (slot >= 0) {
+            return removeSlot(slot);
+        }
+        return others != null && key instanceof String ? others.remove(key) : null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        present.clear();
+        size = 0;
+        others = null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return RowMap.this.size();
+                }
+            };
+            this.entrySet = entrySet;
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterates over the columns in result set order, then over the other keys.
+     */
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private int next = advance(0);
+        private int last = -1;
+        private Iterator<Entry<String, Object>> othersIterator;
+
+        private int advance(int slot) {
+            slot = present.nextSetBit(slot);
+            return slot >= 0 ? slot : values.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next < values.length) {
+                return true;
+            }
+            if (othersIterator == null) {
+                if (others == null) {
+                    return false;
+                }
+                othersIterator = others.entrySet().iterator();
+            }
+            return othersIterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next < values.length) {
+                last = next;
+                next = advance(next + 1);
+                return new SlotEntry(last);
+            }
+            last = -1;
+            return othersIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (othersIterator != null) {
+                othersIterator.remove();
+            } else if (last >= 0) {
+                removeSlot(last);
+                last = -1;
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private class SlotEntry implements Entry<String, Object> {
+
+        private final int slot;
+
+        private SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return columnIndex.getName(slot);
+        }
+
+        @Override
+        public Object getValue() {
+            return values[slot];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return setSlot(slot, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry entry = (Entry) o;
+            return getKey().equals(entry.getKey()) && (getValue() == null ? entry.getValue() == null : getValue().equals(entry.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
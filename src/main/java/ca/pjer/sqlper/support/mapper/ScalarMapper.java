@@ -4,17 +4,64 @@ import ca.pjer.sqlper.Mapper;
 import ca.pjer.sqlper.MapperRegistry;
 import ca.pjer.sqlper.MappingMetaData;
 import ca.pjer.sqlper.SqlperException;
+import ca.pjer.sqlper.support.MappingMetaDataImpl;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public abstract class ScalarMapper<T> implements Mapper<T> {
 
+    private static final Map<Class, Integer> SQL_TYPES = new LinkedHashMap<>();
+
+    static {
+        SQL_TYPES.put(String.class, Types.VARCHAR);
+        SQL_TYPES.put(Character.class, Types.CHAR);
+        SQL_TYPES.put(Boolean.class, Types.BOOLEAN);
+        SQL_TYPES.put(Boolean.TYPE, Types.BOOLEAN);
+        SQL_TYPES.put(Byte.class, Types.TINYINT);
+        SQL_TYPES.put(Byte.TYPE, Types.TINYINT);
+        SQL_TYPES.put(Short.class, Types.SMALLINT);
+        SQL_TYPES.put(Short.TYPE, Types.SMALLINT);
+        SQL_TYPES.put(Integer.class, Types.INTEGER);
+        SQL_TYPES.put(Integer.TYPE, Types.INTEGER);
+        SQL_TYPES.put(Long.class, Types.BIGINT);
+        SQL_TYPES.put(Long.TYPE, Types.BIGINT);
+        SQL_TYPES.put(Float.class, Types.REAL);
+        SQL_TYPES.put(Float.TYPE, Types.REAL);
+        SQL_TYPES.put(Double.class, Types.DOUBLE);
+        SQL_TYPES.put(Double.TYPE, Types.DOUBLE);
+        SQL_TYPES.put(BigDecimal.class, Types.NUMERIC);
+        SQL_TYPES.put(byte[].class, Types.VARBINARY);
+        SQL_TYPES.put(Date.class, Types.DATE);
+        SQL_TYPES.put(Time.class, Types.TIME);
+        SQL_TYPES.put(Timestamp.class, Types.TIMESTAMP);
+        SQL_TYPES.put(java.util.Date.class, Types.TIMESTAMP);
+        SQL_TYPES.put(java.util.Calendar.class, Types.TIMESTAMP);
+        // interfaces implemented by driver classes, matched last
+        SQL_TYPES.put(NClob.class, Types.NCLOB);
+        SQL_TYPES.put(Clob.class, Types.CLOB);
+        SQL_TYPES.put(Blob.class, Types.BLOB);
+        SQL_TYPES.put(Array.class, Types.ARRAY);
+        SQL_TYPES.put(Struct.class, Types.STRUCT);
+        SQL_TYPES.put(Ref.class, Types.REF);
+        SQL_TYPES.put(RowId.class, Types.ROWID);
+        SQL_TYPES.put(SQLXML.class, Types.SQLXML);
+    }
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
     @Override
     public void map(MapperRegistry mapperRegistry, PreparedStatement preparedStatement, MappingMetaData metaData, int index, Class<T> type, T object) {
         try {
-            set(preparedStatement, index + 1, object, metaData.getSqlTypes()[index]);
+            int sqlType = metaData.getSqlTypes()[index];
+            if (sqlType == MappingMetaData.UNKNOWN_SQL_TYPE) {
+                sqlType = inferSqlType(preparedStatement, metaData, index, type, object);
+            }
+            set(preparedStatement, index + 1, object, sqlType);
         } catch (SQLException e) {
             throw new SqlperException("Unable to set column '" + (index + 1) + "' with value '" + object + "' of type '" + type + "'", e);
         }
@@ -29,6 +76,56 @@ public abstract class ScalarMapper<T> implements Mapper<T> {
         }
     }
 
+    /**
+     * Infer the SQL type of a parameter from the type of its value, or from its declared type when null.
+     * For a null of an unknown type, fallback to the parameter meta data of the statement,
+     * and remember the result beside the meta data since it does not depend on the value.
+     *
+     * @return the SQL type, or {@link MappingMetaData#UNKNOWN_SQL_TYPE} for a value to be set without type
+     */
+    protected int inferSqlType(PreparedStatement preparedStatement, MappingMetaData metaData, int index, Class<T> type, T object) {
+        int sqlType = getSqlType(object != null ? object.getClass() : type);
+        if (sqlType != MappingMetaData.UNKNOWN_SQL_TYPE || object != null) {
+            return sqlType;
+        }
+        MappingMetaDataImpl metaDataImpl = metaData instanceof MappingMetaDataImpl ? (MappingMetaDataImpl) metaData : null;
+        if (metaDataImpl != null) {
+            sqlType = metaDataImpl.getInferredSqlType(index);
+            if (sqlType != MappingMetaData.UNKNOWN_SQL_TYPE) {
+                return sqlType;
+            }
+        }
+        try {
+            sqlType = preparedStatement.getParameterMetaData().getParameterType(index + 1);
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Unable to get type of parameter " + (index + 1) + " from the statement meta data", e);
+            return Types.NULL;
+        }
+        if (metaDataImpl != null) {
+            metaDataImpl.setInferredSqlType(index, sqlType);
+        }
+        return sqlType;
+    }
+
+    /**
+     * @return the SQL type usually mapped to a Java type, or {@link MappingMetaData#UNKNOWN_SQL_TYPE}
+     */
+    public static int getSqlType(Class type) {
+        if (type == null) {
+            return MappingMetaData.UNKNOWN_SQL_TYPE;
+        }
+        Integer sqlType = SQL_TYPES.get(type);
+        if (sqlType == null) {
+            for (Map.Entry<Class, Integer> entry : SQL_TYPES.entrySet()) {
+                if (entry.getKey().isAssignableFrom(type)) {
+                    return entry.getValue();
+                }
+            }
+            return MappingMetaData.UNKNOWN_SQL_TYPE;
+        }
+        return sqlType;
+    }
+
     protected abstract void set(PreparedStatement statement, int column, T object, int sqlType) throws SQLException;
 
     protected abstract T get(ResultSet resultSet, int column, Class<T> type, int sqlType) throws SQLException;
@@ -0,0 +1,70 @@
+package ca.pjer.sqlper.support.mapper;
+
+import ca.pjer.sqlper.MapperRegistry;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.RowCollector;
+import ca.pjer.sqlper.SqlperException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Copies a binary column of each row to a channel while the query is read,
+ * through a single buffer, so no value is ever held whole in memory.
+ * The result is the number of bytes copied. The target is not closed.
+ */
+public class StreamCollector implements RowCollector<Long> {
+
+    private final WritableByteChannel target;
+    private final int column;
+    private final ByteBuffer buffer;
+    private long byteCount;
+
+    public StreamCollector(OutputStream target) {
+        this(Channels.newChannel(target), 0);
+    }
+
+    public StreamCollector(WritableByteChannel target) {
+        this(target, 0);
+    }
+
+    /**
+     * @param column the index of the column to copy, from 0
+     */
+    public StreamCollector(WritableByteChannel target, int column) {
+        this.target = target;
+        this.column = column;
+        buffer = ByteBuffer.allocate(8192);
+    }
+
+    @Override
+    public void collect(MapperRegistry mapperRegistry, ResultSet resultSet, MappingMetaData metaData) {
+        try (InputStream inputStream = resultSet.getBinaryStream(column + 1)) {
+            if (inputStream == null) {
+                return;
+            }
+            ReadableByteChannel source = Channels.newChannel(inputStream);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byteCount += target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (SQLException | IOException e) {
+            throw new SqlperException("Unable to copy column '" + (column + 1) + "'", e);
+        }
+    }
+
+    @Override
+    public Long getResult() {
+        return byteCount;
+    }
+}
@@ -1,8 +1,9 @@
 package ca.pjer.sqlper.support.mapper;
 
+import java.io.Serializable;
 import java.util.Comparator;
 
-public class UpperUnderscoreComparator implements Comparator<String> {
+public class UpperUnderscoreComparator implements Comparator<String>, Serializable {
 
     public static final Comparator<String> INSTANCE = new UpperUnderscoreComparator();
 
@@ -56,4 +57,9 @@ public class UpperUnderscoreComparator implements Comparator<String> {
 
         return 0;
     }
+
+    // the instance is compared by identity, keep it so once deserialized
+    private Object readResolve() {
+        return INSTANCE;
+    }
 }
@@ -0,0 +1,105 @@
+package ca.pjer.sqlper.benchmark;
+
+import ca.pjer.sqlper.Mapper;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.support.DefaultMapperRegistry;
+import ca.pjer.sqlper.support.MappingMetaDataImpl;
+import ca.pjer.sqlper.support.mapper.ConverterMapper;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterMapperBenchmark {
+
+    @Param({"character", "date", "calendar", "uri", "joda"})
+    public String converter;
+
+    private DefaultMapperRegistry mapperRegistry;
+    private MappingMetaData metaData;
+    private ResultSet resultSet;
+    private PreparedStatement preparedStatement;
+    private Class type;
+    private Mapper mapper;
+    private Object value;
+
+    @Setup
+    public void setup() {
+        mapperRegistry = new DefaultMapperRegistry();
+        // a user defined converter to a type with its own converter, as in UseCaseTest
+        mapperRegistry.register(DateTime.class, new ConverterMapper<DateTime, Date>(Date.class) {
+            @Override
+            protected Date convertToNative(Class<DateTime> fromType, DateTime object, Class<Date> toType) throws Exception {
+                return object.toDate();
+            }
+
+            @Override
+            protected DateTime convertFromNative(Class<Date> fromType, Date object, Class<DateTime> toType) throws Exception {
+                return new DateTime(object);
+            }
+        });
+        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
+        Object nativeValue;
+        int sqlType;
+        switch (converter) {
+            case "character":
+                type = Character.class;
+                value = 'c';
+                nativeValue = "c";
+                sqlType = Types.CHAR;
+                break;
+            case "date":
+                type = Date.class;
+                value = new Date(timestamp.getTime());
+                nativeValue = timestamp;
+                sqlType = Types.TIMESTAMP;
+                break;
+            case "calendar":
+                type = Calendar.class;
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(timestamp);
+                value = calendar;
+                nativeValue = timestamp;
+                sqlType = Types.TIMESTAMP;
+                break;
+            case "uri":
+                type = URI.class;
+                value = URI.create("http://example.com/");
+                nativeValue = "http://example.com/";
+                sqlType = Types.VARCHAR;
+                break;
+            default:
+                type = DateTime.class;
+                value = new DateTime(timestamp.getTime());
+                nativeValue = timestamp;
+                sqlType = Types.TIMESTAMP;
+        }
+        metaData = new MappingMetaDataImpl(1, new String[]{"VALUE"}, new int[]{sqlType});
+        resultSet = JdbcStubs.resultSet(new Object[]{nativeValue});
+        preparedStatement = JdbcStubs.preparedStatement();
+        mapper = mapperRegistry.find(type);
+    }
+
+    @Benchmark
+    public Object get() {
+        return mapper.map(mapperRegistry, resultSet, metaData, 0, type, null);
+    }
+
+    @Benchmark
+    public void set() {
+        mapper.map(mapperRegistry, preparedStatement, metaData, 0, type, value);
+    }
+}
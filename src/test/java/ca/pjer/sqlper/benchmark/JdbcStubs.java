@@ -0,0 +1,65 @@
+package ca.pjer.sqlper.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * In-memory JDBC stubs, to measure mapping without a driver.
+ */
+public class JdbcStubs {
+
+    /**
+     * @return a result set positioned on a single row holding values, forever
+     */
+    public static ResultSet resultSet(final Object[] values) {
+        return (ResultSet) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(), new Class[]{ResultSet.class}, new InvocationHandler() {
+
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    return true;
+                }
+                if (name.equals("wasNull")) {
+                    return wasNull;
+                }
+                if (name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+                    Object value = values[(Integer) args[0] - 1];
+                    wasNull = value == null;
+                    Class returnType = method.getReturnType();
+                    if (returnType == Integer.TYPE) {
+                        return value == null ? 0 : ((Number) value).intValue();
+                    } else if (returnType == Long.TYPE) {
+                        return value == null ? 0L : ((Number) value).longValue();
+                    } else if (returnType == Double.TYPE) {
+                        return value == null ? 0.0 : ((Number) value).doubleValue();
+                    } else if (returnType == Boolean.TYPE) {
+                        return value != null && (Boolean) value;
+                    }
+                    return value;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    /**
+     * @return a prepared statement discarding its parameters
+     */
+    public static PreparedStatement preparedStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(), new Class[]{PreparedStatement.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().startsWith("set")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package ca.pjer.sqlper.benchmark;
+
+import ca.pjer.sqlper.Mapper;
+import ca.pjer.sqlper.support.DefaultMapperRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MapperRegistryBenchmark {
+
+    private static final Class[] TYPES = {
+            String.class, Integer.class, Long.TYPE, BigDecimal.class, java.sql.Timestamp.class, Date.class,
+            GregorianCalendar.class, URI.class, HashMap.class, ArrayList.class, PropertyAccessorBenchmark.Bean.class
+    };
+
+    private DefaultMapperRegistry mapperRegistry;
+
+    @Setup
+    public void setup() {
+        mapperRegistry = new DefaultMapperRegistry();
+    }
+
+    @Benchmark
+    public void find(Blackhole blackhole) {
+        for (Class type : TYPES) {
+            Mapper mapper = mapperRegistry.find(type);
+            blackhole.consume(mapper);
+        }
+    }
+}
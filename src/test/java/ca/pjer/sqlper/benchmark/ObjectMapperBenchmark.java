@@ -0,0 +1,249 @@
+package ca.pjer.sqlper.benchmark;
+
+import ca.pjer.sqlper.Mapper;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.support.DefaultMapperRegistry;
+import ca.pjer.sqlper.support.MappingMetaDataImpl;
+import ca.pjer.sqlper.support.mapper.ConstructorObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectMapperBenchmark {
+
+    public static class WideBean {
+        private Integer c0;
+        private String c1;
+        private Integer c2;
+        private String c3;
+        private Integer c4;
+        private String c5;
+        private Integer c6;
+        private String c7;
+        private Integer c8;
+        private String c9;
+        private Integer c10;
+        private String c11;
+        private Integer c12;
+        private String c13;
+        private Integer c14;
+        private String c15;
+
+        public Integer getC0() {
+            return c0;
+        }
+
+        public void setC0(Integer c0) {
+            this.c0 = c0;
+        }
+
+        public String getC1() {
+            return c1;
+        }
+
+        public void setC1(String c1) {
+            this.c1 = c1;
+        }
+
+        public Integer getC2() {
+            return c2;
+        }
+
+        public void setC2(Integer c2) {
+            this.c2 = c2;
+        }
+
+        public String getC3() {
+            return c3;
+        }
+
+        public void setC3(String c3) {
+            this.c3 = c3;
+        }
+
+        public Integer getC4() {
+            return c4;
+        }
+
+        public void setC4(Integer c4) {
+            this.c4 = c4;
+        }
+
+        public String getC5() {
+            return c5;
+        }
+
+        public void setC5(String c5) {
+            this.c5 = c5;
+        }
+
+        public Integer getC6() {
+            return c6;
+        }
+
+        public void setC6(Integer c6) {
+            this.c6 = c6;
+        }
+
+        public String getC7() {
+            return c7;
+        }
+
+        public void setC7(String c7) {
+            this.c7 = c7;
+        }
+
+        public Integer getC8() {
+            return c8;
+        }
+
+        public void setC8(Integer c8) {
+            this.c8 = c8;
+        }
+
+        public String getC9() {
+            return c9;
+        }
+
+        public void setC9(String c9) {
+            this.c9 = c9;
+        }
+
+        public Integer getC10() {
+            return c10;
+        }
+
+        public void setC10(Integer c10) {
+            this.c10 = c10;
+        }
+
+        public String getC11() {
+            return c11;
+        }
+
+        public void setC11(String c11) {
+            this.c11 = c11;
+        }
+
+        public Integer getC12() {
+            return c12;
+        }
+
+        public void setC12(Integer c12) {
+            this.c12 = c12;
+        }
+
+        public String getC13() {
+            return c13;
+        }
+
+        public void setC13(String c13) {
+            this.c13 = c13;
+        }
+
+        public Integer getC14() {
+            return c14;
+        }
+
+        public void setC14(Integer c14) {
+            this.c14 = c14;
+        }
+
+        public String getC15() {
+            return c15;
+        }
+
+        public void setC15(String c15) {
+            this.c15 = c15;
+        }
+    }
+
+    /**
+     * The same columns, mapped by position through a single constructor call.
+     */
+    public static class WideValue extends WideBean {
+
+        public WideValue(Integer c0, String c1, Integer c2, String c3) {
+            setC0(c0);
+            setC1(c1);
+            setC2(c2);
+            setC3(c3);
+        }
+
+        public WideValue(Integer c0, String c1, Integer c2, String c3, Integer c4, String c5, Integer c6, String c7) {
+            this(c0, c1, c2, c3);
+            setC4(c4);
+            setC5(c5);
+            setC6(c6);
+            setC7(c7);
+        }
+
+        public WideValue(Integer c0, String c1, Integer c2, String c3, Integer c4, String c5, Integer c6, String c7,
+                         Integer c8, String c9, Integer c10, String c11, Integer c12, String c13, Integer c14, String c15) {
+            this(c0, c1, c2, c3, c4, c5, c6, c7);
+            setC8(c8);
+            setC9(c9);
+            setC10(c10);
+            setC11(c11);
+            setC12(c12);
+            setC13(c13);
+            setC14(c14);
+            setC15(c15);
+        }
+    }
+
+    @Param({"reflexion", "constructor", "map", "list"})
+    public String mapper;
+
+    @Param({"4", "8", "16"})
+    public int columns;
+
+    private DefaultMapperRegistry mapperRegistry;
+    private MappingMetaData metaData;
+    private ResultSet resultSet;
+    private PreparedStatement preparedStatement;
+    private Class type;
+    private Mapper rowMapper;
+    private Object row;
+
+    @Setup
+    public void setup() {
+        mapperRegistry = new DefaultMapperRegistry();
+        String[] names = new String[columns];
+        int[] sqlTypes = new int[columns];
+        Object[] values = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            names[i] = "C" + i;
+            sqlTypes[i] = i % 2 == 0 ? Types.INTEGER : Types.VARCHAR;
+            values[i] = i % 2 == 0 ? (Object) i : "value" + i;
+        }
+        metaData = new MappingMetaDataImpl(columns, names, sqlTypes);
+        resultSet = JdbcStubs.resultSet(values);
+        preparedStatement = JdbcStubs.preparedStatement();
+        mapperRegistry.register(WideValue.class, new ConstructorObjectMapper<WideValue>());
+        type = "reflexion".equals(mapper) ? WideBean.class : "constructor".equals(mapper) ? WideValue.class : "map".equals(mapper) ? Map.class : List.class;
+        rowMapper = mapperRegistry.find(type);
+        row = rowMapper.map(mapperRegistry, resultSet, metaData, 0, type, null);
+    }
+
+    @Benchmark
+    public Object mapRow() {
+        return rowMapper.map(mapperRegistry, resultSet, metaData, 0, type, null);
+    }
+
+    @Benchmark
+    public void bindRow() {
+        rowMapper.map(mapperRegistry, preparedStatement, metaData, 0, row.getClass(), row);
+    }
+}
@@ -0,0 +1,45 @@
+package ca.pjer.sqlper.benchmark;
+
+import ca.pjer.sqlper.ParsedSql;
+import ca.pjer.sqlper.support.LexerParsedSql;
+import ca.pjer.sqlper.support.PatternParsedSql;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsedSqlBenchmark {
+
+    // the pattern DefaultMappingFactory used before LexerParsedSql
+    private static final Pattern PARAM_PATTERN = Pattern.compile("[^:](:([\\p{Alpha}_][\\p{Alnum}_]*))");
+
+    @Param({"1", "10", "100"})
+    public int parameters;
+
+    private String sql;
+
+    @Setup
+    public void setup() {
+        StringBuilder sqlBuilder = new StringBuilder("SELECT ID, NAME, CREATED -- the columns\nFROM ACCOUNT WHERE NAME <> ':none'");
+        for (int i = 0; i < parameters; i++) {
+            sqlBuilder.append(" AND (C").append(i).append(" = :param").append(i).append(" OR C").append(i).append("::TEXT IS NULL)");
+        }
+        sql = sqlBuilder.toString();
+    }
+
+    @Benchmark
+    public ParsedSql pattern() {
+        return new PatternParsedSql(PARAM_PATTERN, sql);
+    }
+
+    @Benchmark
+    public ParsedSql lexer() {
+        return new LexerParsedSql(sql);
+    }
+}
@@ -0,0 +1,112 @@
+package ca.pjer.sqlper.benchmark;
+
+import ca.pjer.sqlper.support.mapper.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyAccessorBenchmark {
+
+    public static class Bean {
+        private Integer id;
+        private String name;
+        private Long count;
+        private Double amount;
+        private Boolean active;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Long getCount() {
+            return count;
+        }
+
+        public void setCount(Long count) {
+            this.count = count;
+        }
+
+        public Double getAmount() {
+            return amount;
+        }
+
+        public void setAmount(Double amount) {
+            this.amount = amount;
+        }
+
+        public Boolean getActive() {
+            return active;
+        }
+
+        public void setActive(Boolean active) {
+            this.active = active;
+        }
+    }
+
+    @Param({"reflection", "methodHandle"})
+    public String backend;
+
+    private Instantiator<Bean> instantiator;
+    private PropertyAccessor<Bean>[] accessors;
+    private Object[] values;
+
+    @Setup
+    public void setup() throws Exception {
+        PropertyAccessorFactory factory = "reflection".equals(backend)
+                ? ReflectionPropertyAccessorFactory.INSTANCE
+                : MethodHandlePropertyAccessorFactory.INSTANCE;
+        instantiator = factory.createInstantiator(Bean.class);
+        List<PropertyAccessor<Bean>> list = new ArrayList<>();
+        for (PropertyDescriptor propertyDescriptor : Introspector.getBeanInfo(Bean.class, Object.class).getPropertyDescriptors()) {
+            list.add(factory.createPropertyAccessor(Bean.class, propertyDescriptor));
+        }
+        accessors = list.toArray(new PropertyAccessor[list.size()]);
+        values = new Object[accessors.length];
+        for (int i = 0; i < accessors.length; i++) {
+            Class type = accessors[i].getType();
+            values[i] = type == String.class ? "name" : type == Integer.class ? Integer.valueOf(42)
+                    : type == Long.class ? Long.valueOf(42L) : type == Double.class ? Double.valueOf(4.2) : Boolean.TRUE;
+        }
+    }
+
+    @Benchmark
+    public Bean newInstanceAndSet() throws Exception {
+        Bean bean = instantiator.newInstance();
+        for (int i = 0; i < accessors.length; i++) {
+            accessors[i].set(bean, values[i]);
+        }
+        return bean;
+    }
+
+    @Benchmark
+    public int get() throws Exception {
+        Bean bean = newInstanceAndSet();
+        int hash = 0;
+        for (int i = 0; i < accessors.length; i++) {
+            hash += accessors[i].get(bean).hashCode();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,121 @@
+package ca.pjer.sqlper.benchmark;
+
+import ca.pjer.sqlper.Sqlper;
+import ca.pjer.sqlper.support.DataSourceConnectionProvider;
+import ca.pjer.sqlper.support.DefaultSqlperManager;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end, against an in-memory HSQLDB.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlperBenchmark {
+
+    public static class Account {
+        private Integer id;
+        private String name;
+        private String email;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public void setEmail(String email) {
+            this.email = email;
+        }
+    }
+
+    private static final int ROWS = 100;
+
+    @Param({"0", "64"})
+    public int statementCacheSize;
+
+    private JDBCDataSource dataSource;
+    private Sqlper sqlper;
+    private Account account;
+    private Map<String, Object> byId;
+
+    @Setup
+    public void setup() throws Exception {
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:sqlperbenchmark");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE ACCOUNT (" +
+                        "ID INTEGER GENERATED ALWAYS AS IDENTITY(START WITH 1) PRIMARY KEY, " +
+                        "NAME VARCHAR(256), " +
+                        "EMAIL VARCHAR(256))");
+            }
+        }
+        DefaultSqlperManager sqlperManager = new DefaultSqlperManager(new DataSourceConnectionProvider(dataSource));
+        sqlperManager.setStatementCacheSize(statementCacheSize);
+        sqlper = sqlperManager.open();
+        for (int i = 0; i < ROWS; i++) {
+            Account account = new Account();
+            account.setName("name" + i);
+            account.setEmail("name" + i + "@example.com");
+            sqlper.update("INSERT INTO ACCOUNT (NAME, EMAIL) VALUES (:name, :email)", account);
+        }
+        account = sqlper.queryOne("SELECT * FROM ACCOUNT WHERE ID = :id", Collections.singletonMap("id", 1), Account.class);
+        byId = Collections.<String, Object>singletonMap("id", ROWS / 2);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        sqlper.close();
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Account> queryBeans() {
+        return sqlper.query("SELECT * FROM ACCOUNT", Account.class);
+    }
+
+    @Benchmark
+    public List<Map> queryMaps() {
+        return sqlper.query("SELECT * FROM ACCOUNT", Map.class);
+    }
+
+    @Benchmark
+    public Account queryOne() {
+        return sqlper.queryOne("SELECT * FROM ACCOUNT WHERE ID = :id", byId, Account.class);
+    }
+
+    @Benchmark
+    public int update() {
+        return sqlper.update("UPDATE ACCOUNT SET NAME = :name, EMAIL = :email WHERE ID = :id", account);
+    }
+}
@@ -0,0 +1,66 @@
+package ca.pjer.sqlper.test;
+
+import ca.pjer.sqlper.Mapper;
+import ca.pjer.sqlper.support.DefaultMapperRegistry;
+import ca.pjer.sqlper.support.cache.CacheStatistics;
+import ca.pjer.sqlper.support.mapper.JDBCScalarMapper;
+import ca.pjer.sqlper.support.mapper.ReflexionObjectMapper;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.*;
+
+public class DefaultMapperRegistryTest {
+
+    @Test
+    public void mostSpecificMapper() throws Exception {
+
+        DefaultMapperRegistry mapperRegistry = new DefaultMapperRegistry();
+
+        Mapper objectMapper = new JDBCScalarMapper(Object.class);
+        Mapper charSequenceMapper = new JDBCScalarMapper(CharSequence.class);
+        mapperRegistry.register(Object.class, objectMapper);
+        mapperRegistry.register(CharSequence.class, charSequenceMapper);
+
+        assertSame("CharSequence is more specific than Object, even if registered after",
+                charSequenceMapper, mapperRegistry.find(StringBuilder.class));
+        assertSame("Object is the only match", objectMapper, mapperRegistry.find(Thread.class));
+    }
+
+    @Test
+    public void registerInvalidatesResolution() throws Exception {
+
+        DefaultMapperRegistry mapperRegistry = new DefaultMapperRegistry();
+
+        assertThat("Default bean mapper", mapperRegistry.find(Thread.class), instanceOf(ReflexionObjectMapper.class));
+        assertSame("List is the most specific default mapper of an ArrayList",
+                mapperRegistry.find(List.class), mapperRegistry.find(ArrayList.class));
+
+        Mapper threadMapper = new JDBCScalarMapper(Thread.class);
+        mapperRegistry.register(Thread.class, threadMapper);
+
+        assertSame("A mapper registered at runtime replaces the resolved one", threadMapper, mapperRegistry.find(Thread.class));
+    }
+
+    @Test
+    public void statistics() throws Exception {
+
+        DefaultMapperRegistry mapperRegistry = new DefaultMapperRegistry();
+        mapperRegistry.setStatisticsEnabled(true);
+
+        mapperRegistry.find(String.class);
+        mapperRegistry.find(String.class);
+        mapperRegistry.find(Integer.class);
+
+        CacheStatistics statistics = mapperRegistry.getStatistics();
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(2, statistics.getSize());
+
+        mapperRegistry.register(StringBuilder.class, new JDBCScalarMapper(StringBuilder.class));
+        assertEquals("Resolved types discarded by a registration", 2, mapperRegistry.getStatistics().getEvictionCount());
+    }
+}
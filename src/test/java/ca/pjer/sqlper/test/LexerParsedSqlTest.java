@@ -0,0 +1,44 @@
+package ca.pjer.sqlper.test;
+
+import ca.pjer.sqlper.ParsedSql;
+import ca.pjer.sqlper.support.LexerParsedSql;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LexerParsedSqlTest {
+
+    @Test
+    public void named() {
+        ParsedSql parsedSql = new LexerParsedSql(":a, b = :b_1");
+        Assert.assertEquals("?, b = ?", parsedSql.getSql());
+        Assert.assertArrayEquals(new String[]{"a", "b_1"}, parsedSql.getParameterNames());
+        Assert.assertArrayEquals(new int[]{0, 7}, parsedSql.getParameterPositions());
+    }
+
+    @Test
+    public void skipped() {
+        String sql = "select ':a', \"x:b\", `y:c`, $$:d$$, $t$:e$t$, f::text -- :g\n/* :h */ from t";
+        ParsedSql parsedSql = new LexerParsedSql(sql);
+        Assert.assertEquals(sql, parsedSql.getSql());
+        Assert.assertEquals(0, parsedSql.getParameterNames().length);
+    }
+
+    @Test
+    public void dollarInIdentifier() {
+        ParsedSql parsedSql = new LexerParsedSql("select col$x$ from t$1 where col$x$ = :id and y = $$:z$$");
+        Assert.assertEquals("select col$x$ from t$1 where col$x$ = ? and y = $$:z$$", parsedSql.getSql());
+        Assert.assertArrayEquals(new String[]{"id"}, parsedSql.getParameterNames());
+    }
+
+    @Test
+    public void mixed() {
+        ParsedSql parsedSql = new LexerParsedSql("select * from t where a = ? and b = :b and c = 'it''s :c' and d = ?::int");
+        Assert.assertEquals("select * from t where a = ? and b = ? and c = 'it''s :c' and d = ?::int", parsedSql.getSql());
+        Assert.assertArrayEquals(new String[]{null, "b", null}, parsedSql.getParameterNames());
+        int[] positions = parsedSql.getParameterPositions();
+        Assert.assertEquals(3, positions.length);
+        for (int position : positions) {
+            Assert.assertEquals('?', parsedSql.getSql().charAt(position));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ca.pjer.sqlper.test;
+
+import ca.pjer.sqlper.support.cache.CacheStatistics;
+import ca.pjer.sqlper.support.cache.LruCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LruCacheTest {
+
+    @Test
+    public void boundedLru() throws Exception {
+
+        LruCache<String, Integer> cache = new LruCache<>(3, 1);
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        assertEquals("a is a hit, and now the most recently used", Integer.valueOf(1), cache.get("a"));
+
+        cache.put("d", 4);
+        assertNull("b was the least recently used", cache.get("b"));
+        assertEquals("a is still there", Integer.valueOf(1), cache.get("a"));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getEvictionCount());
+        assertEquals(3, statistics.getSize());
+    }
+
+    @Test
+    public void segmentsShareMaxSize() throws Exception {
+
+        LruCache<Integer, Integer> cache = new LruCache<>(100, 16);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        assertTrue("Size never exceeds maxSize", cache.size() <= 100);
+        assertEquals("Every insertion over maxSize evicted", 1000 - cache.size(), cache.getStatistics().getEvictionCount());
+    }
+}
@@ -0,0 +1,1306 @@
+package ca.pjer.sqlper.test;
+
+import ca.pjer.sqlper.ColumnarResult;
+import ca.pjer.sqlper.MappingMetaData;
+import ca.pjer.sqlper.ResultIterator;
+import ca.pjer.sqlper.Sqlper;
+import ca.pjer.sqlper.SqlperCallback;
+import ca.pjer.sqlper.SqlperException;
+import ca.pjer.sqlper.SqlperListener;
+import ca.pjer.sqlper.StatementEvent;
+import ca.pjer.sqlper.support.BulkLoadResult;
+import ca.pjer.sqlper.support.BulkLoader;
+import ca.pjer.sqlper.support.DataSourceConnectionProvider;
+import ca.pjer.sqlper.support.DefaultMapperRegistry;
+import ca.pjer.sqlper.support.DefaultMappingFactory;
+import ca.pjer.sqlper.support.DefaultSqlperManager;
+import ca.pjer.sqlper.support.PoolingConnectionProvider;
+import ca.pjer.sqlper.support.SqlperExecutors;
+import ca.pjer.sqlper.support.SqlperImpl;
+import ca.pjer.sqlper.support.StatementCache;
+import ca.pjer.sqlper.support.cache.CacheStatistics;
+import ca.pjer.sqlper.support.cache.QueryResultCache;
+import ca.pjer.sqlper.support.mapper.ConstructorObjectMapper;
+import ca.pjer.sqlper.support.mapper.CsvCollector;
+import ca.pjer.sqlper.support.mapper.GraphMapping;
+import ca.pjer.sqlper.support.mapper.JDBCScalarMapper;
+import ca.pjer.sqlper.support.mapper.JsonLinesCollector;
+import ca.pjer.sqlper.support.mapper.MethodHandlePropertyAccessorFactory;
+import ca.pjer.sqlper.support.mapper.PropertyAccessorFactory;
+import ca.pjer.sqlper.support.mapper.ReflectionPropertyAccessorFactory;
+import ca.pjer.sqlper.support.mapper.StreamCollector;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.beans.ConstructorProperties;
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.*;
+
+public class SqlperImplTest {
+
+    public static class Item {
+        private Integer id;
+        private String name;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Stats {
+        private int itemCount;
+        private long idTotal;
+        private double idAverage;
+        private boolean active;
+
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        public void setItemCount(int itemCount) {
+            this.itemCount = itemCount;
+        }
+
+        public long getIdTotal() {
+            return idTotal;
+        }
+
+        public void setIdTotal(long idTotal) {
+            this.idTotal = idTotal;
+        }
+
+        public double getIdAverage() {
+            return idAverage;
+        }
+
+        public void setIdAverage(double idAverage) {
+            this.idAverage = idAverage;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+    }
+
+    public static class Author {
+        private Integer id;
+        private String name;
+        private List<Book> books;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<Book> getBooks() {
+            return books;
+        }
+
+        public void setBooks(List<Book> books) {
+            this.books = books;
+        }
+    }
+
+    public static class Book {
+        private Integer id;
+        private String title;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+    }
+
+    public static class ImmutableItem {
+        private final int id;
+        private final String name;
+
+        @ConstructorProperties({"name", "id"})
+        public ImmutableItem(String name, int id) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Gauge {
+        private Integer id;
+        private int units;
+        private long total;
+        private double average;
+        private boolean active;
+        private String label = "fixed";
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public int getUnits() {
+            return units;
+        }
+
+        public void setUnits(int units) {
+            this.units = units;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public double getAverage() {
+            return average;
+        }
+
+        public void setAverage(double average) {
+            this.average = average;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        private void setLabel(String label) {
+            this.label = label;
+        }
+    }
+
+    private JDBCDataSource dataSource;
+    private DefaultSqlperManager sqlperManager;
+
+    @Before
+    public void init() throws Exception {
+        dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:sqlperimpl");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE ITEM (" +
+                        "ID INTEGER GENERATED ALWAYS AS IDENTITY(START WITH 1) PRIMARY KEY, " +
+                        "NAME VARCHAR(256))");
+            }
+        }
+        sqlperManager = new DefaultSqlperManager(new DataSourceConnectionProvider(dataSource));
+    }
+
+    @After
+    public void after() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            }
+        }
+    }
+
+    @Test
+    public void statementCache() throws Exception {
+
+        sqlperManager.setStatementCacheSize(2);
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            StatementCache statementCache = ((SqlperImpl) sqlper).getStatementCache();
+            assertNotNull("Statement cache is enabled", statementCache);
+
+            for (int i = 0; i < 10; i++) {
+                Item item = new Item();
+                item.setName("item" + i);
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", item, "ID");
+                assertNotNull("Id was generated and fetched back", item.getId());
+            }
+
+            assertEquals("First insert prepared the statement", 1, statementCache.getMissCount());
+            assertEquals("Other inserts reused it", 9, statementCache.getHitCount());
+
+            sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Long.class);
+            sqlper.query("SELECT * FROM ITEM WHERE NAME = :name", Collections.singletonMap("name", "item1"), Item.class);
+
+            assertEquals("Cache is bounded", 2, statementCache.getSize());
+            assertEquals("The insert was evicted", 1, statementCache.getEvictionCount());
+
+            Long count = sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Long.class);
+            assertEquals("Cached statement still works", Long.valueOf(10), count);
+            assertEquals("Count was reused", 10, statementCache.getHitCount());
+
+            ((SqlperImpl) sqlper).setFetchSize(50);
+            try (ResultIterator<Item> iterator = sqlper.iterate("SELECT * FROM ITEM", Item.class)) {
+                assertTrue(iterator.hasNext());
+            }
+            sqlper.queryColumns("SELECT * FROM ITEM");
+            sqlper.collect("SELECT * FROM ITEM", new CsvCollector(new StringWriter()));
+            PreparedStatement cached = statementCache.take("SELECT * FROM ITEM", new String[0]);
+            assertEquals("The session fetch size does not stick to the cached statement", 0, cached.getFetchSize());
+            cached.close();
+        }
+    }
+
+    @Test
+    public void updateBatch() throws Exception {
+
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Item item = new Item();
+            item.setName("item" + i);
+            items.add(item);
+        }
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            int[] counts = sqlper.updateBatch("INSERT INTO ITEM (NAME) VALUES (:name)", items, 10, "ID");
+
+            assertEquals("One update count per item", 25, counts.length);
+            for (int count : counts) {
+                assertEquals("Each item inserted one row", 1, count);
+            }
+            for (int i = 0; i < items.size(); i++) {
+                assertEquals("Generated ids were mapped back in order", Integer.valueOf(i + 1), items.get(i).getId());
+            }
+
+            counts = sqlper.updateBatch("UPDATE ITEM SET NAME = UPPER(NAME) WHERE ID = :id", items.subList(0, 5));
+
+            assertEquals("One update count per item", 5, counts.length);
+            assertEquals("Updated rows", "ITEM0", sqlper.queryOne("SELECT NAME FROM ITEM WHERE ID = 1", String.class));
+        }
+    }
+
+    @Test
+    public void updateBatchFailure() throws Exception {
+
+        sqlperManager.setStatementCacheSize(2);
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            String sql = "INSERT INTO ITEM (NAME) VALUES (:name)";
+            try {
+                sqlper.updateBatch(sql, Arrays.asList(Collections.singletonMap("name", "a"), Collections.singletonMap("name", "b"), null), 10);
+                fail("A null element");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Batch parameters at index 2 are null", e.getMessage());
+            }
+
+            int[] counts = sqlper.updateBatch(sql, Arrays.asList(Collections.singletonMap("name", "c"), Collections.singletonMap("name", "d")));
+            assertEquals("The rows of the failed batch were not kept on the cached statement", 2, counts.length);
+            assertEquals(1, ((SqlperImpl) sqlper).getStatementCache().getHitCount());
+            assertEquals(Long.valueOf(2), sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Long.class));
+        }
+    }
+
+    @Test
+    public void iterate() throws Exception {
+
+        sqlperManager.setStatementCacheSize(4);
+        sqlperManager.setFetchSize(2);
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            for (int i = 0; i < 5; i++) {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item" + i));
+            }
+
+            int count = 0;
+            try (ResultIterator<Item> iterator = sqlper.iterate("SELECT * FROM ITEM WHERE ID > :id ORDER BY ID",
+                    Collections.singletonMap("id", 0), Item.class)) {
+                while (iterator.hasNext()) {
+                    Item item = iterator.next();
+                    assertEquals("Rows are mapped one at a time", "item" + count, item.getName());
+                    count++;
+                }
+            }
+            assertEquals("All rows were iterated", 5, count);
+
+            ResultIterator<String> abandoned = sqlper.iterate("SELECT NAME FROM ITEM ORDER BY ID", String.class);
+            assertEquals("First row", "item0", abandoned.next());
+            abandoned.close();
+            assertFalse("Closed iterator has no more rows", abandoned.hasNext());
+
+            StatementCache statementCache = ((SqlperImpl) sqlper).getStatementCache();
+            assertEquals("Statements were released back to the cache", 3, statementCache.getSize());
+        }
+    }
+
+    @Test
+    public void propertyAccessorFactories() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES ('fixed'), ('other')");
+        }
+
+        List<List<Object>> results = new ArrayList<>();
+        for (PropertyAccessorFactory factory : new PropertyAccessorFactory[]{
+                ReflectionPropertyAccessorFactory.INSTANCE, MethodHandlePropertyAccessorFactory.INSTANCE}) {
+            DefaultSqlperManager manager = new DefaultSqlperManager(new DataSourceConnectionProvider(dataSource),
+                    new DefaultMappingFactory(new DefaultMapperRegistry(factory)));
+            try (Sqlper sqlper = manager.open()) {
+                List<Object> values = new ArrayList<>();
+                List<Gauge> gauges = sqlper.query("SELECT ID, ID * 2 AS UNITS, CAST(ID * 3000000000 AS BIGINT) AS TOTAL, " +
+                        "CAST(ID AS DOUBLE) / 4 AS AVERAGE, ID = 1 AS ACTIVE FROM ITEM ORDER BY ID", Gauge.class);
+                for (Gauge gauge : gauges) {
+                    values.addAll(Arrays.asList(gauge.getId(), gauge.getUnits(), gauge.getTotal(), gauge.getAverage(), gauge.isActive(), gauge.getLabel()));
+                }
+                // bound through the getters, including the one of the property with a private setter
+                values.add(sqlper.queryOne("SELECT COUNT(*) FROM ITEM WHERE ID * 2 = :units AND NAME = :label", gauges.get(0), Integer.class));
+                try {
+                    sqlper.query("SELECT ID, NAME AS LABEL FROM ITEM", Gauge.class);
+                    fail("A property with a private setter is not writable");
+                } catch (SqlperException e) {
+                    values.add(e.getClass());
+                }
+                results.add(values);
+            }
+        }
+        assertEquals(Arrays.<Object>asList(1, 2, 3000000000L, 0.25, true, "fixed", 2, 4, 6000000000L, 0.5, false, "fixed", 1, SqlperException.class),
+                results.get(0));
+        assertEquals("Both factories map the same", results.get(0), results.get(1));
+    }
+
+    @Test
+    public void primitiveProperties() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            for (int i = 0; i < 4; i++) {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item" + i));
+            }
+
+            Stats stats = sqlper.queryOne("SELECT COUNT(*) AS ITEM_COUNT, SUM(ID) AS ID_TOTAL, " +
+                    "AVG(CAST(ID AS DOUBLE)) AS ID_AVERAGE, TRUE AS ACTIVE FROM ITEM", Stats.class);
+
+            assertEquals(4, stats.getItemCount());
+            assertEquals(10L, stats.getIdTotal());
+            assertEquals(2.5, stats.getIdAverage(), 0.0);
+            assertTrue(stats.isActive());
+
+            Integer count = sqlper.queryOne("SELECT COUNT(*) FROM ITEM WHERE ID > :id", Collections.singletonMap("id", 2), Integer.class);
+            assertEquals("Wrapper type read from a BIGINT column", Integer.valueOf(2), count);
+
+            assertNull("Null wrapper", sqlper.queryOne("SELECT MAX(ID) FROM ITEM WHERE ID < 0", Integer.class));
+
+            try {
+                sqlper.queryOne("SELECT CAST(1.5 AS DECIMAL(10, 2)) AS ITEM_COUNT FROM ITEM WHERE ID = 1", Stats.class);
+                fail("A decimal with a fraction was truncated into an int");
+            } catch (SqlperException e) {
+                // expected
+            }
+            try {
+                sqlper.queryOne("SELECT CAST(2.9 AS DOUBLE) AS ID_TOTAL FROM ITEM WHERE ID = 1", Stats.class);
+                fail("A double was truncated into a long");
+            } catch (SqlperException e) {
+                // expected
+            }
+            assertEquals("An integer column into a double", 4.0,
+                    sqlper.queryOne("SELECT COUNT(*) AS ID_AVERAGE FROM ITEM", Stats.class).getIdAverage(), 0.0);
+        }
+    }
+
+    @Test
+    public void rowMappingPlans() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES ('item1'), ('item2')");
+
+            String sql = "SELECT ID, NAME FROM ITEM ORDER BY ID";
+            for (int i = 0; i < 2; i++) {
+                // the same shape, alternately into two types
+                List<Item> items = sqlper.query(sql, Item.class);
+                assertEquals(Integer.valueOf(2), items.get(1).getId());
+                assertEquals("item2", items.get(1).getName());
+                List<Author> authors = sqlper.query(sql, Author.class);
+                assertEquals(Integer.valueOf(2), authors.get(1).getId());
+                assertEquals("item1", authors.get(0).getName());
+                assertNull(authors.get(0).getBooks());
+            }
+
+            sqlperManager.getMappingFactory().getMapperRegistry().register(String.class, new JDBCScalarMapper(String.class) {
+                @Override
+                protected Object get(ResultSet resultSet, int column, Class type, int sqlType) throws SQLException {
+                    String value = resultSet.getString(column);
+                    return value != null ? value.toUpperCase() : null;
+                }
+            });
+            assertEquals("Registering a mapper cleared the plans of both types", "ITEM1", sqlper.query(sql, Item.class).get(0).getName());
+            assertEquals("ITEM1", sqlper.query(sql, Author.class).get(0).getName());
+        }
+    }
+
+    @Test
+    public void bindingPlans() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES ('item1'), ('item2')");
+
+            // the same parsed names each time, with values of another type
+            String sql = "SELECT NAME FROM ITEM WHERE ID = :id";
+            Map<String, Object> parameters = new HashMap<>();
+            Object[] ids = {1, 2L, "1", new BigDecimal("2"), (short) 1, 2};
+            String[] names = {"item1", "item2", "item1", "item2", "item1", "item2"};
+            for (int i = 0; i < ids.length; i++) {
+                parameters.put("id", ids[i]);
+                assertEquals("Bound from a " + ids[i].getClass(), names[i], sqlper.queryOne(sql, parameters, String.class));
+            }
+            parameters.put("id", null);
+            assertNull(sqlper.queryOne(sql, parameters, String.class));
+
+            Item item = new Item();
+            item.setId(2);
+            assertEquals("Another parameter class, another plan", "item2", sqlper.queryOne(sql, item, String.class));
+            parameters.put("id", 1);
+            assertEquals("item1", sqlper.queryOne(sql, parameters, String.class));
+        }
+    }
+
+    @Test
+    public void inList() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            for (int i = 0; i < 10; i++) {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item" + i));
+            }
+
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("ids", Arrays.asList(2, 3, 5));
+            parameters.put("name", "item%");
+            List<Item> items = sqlper.query("SELECT * FROM ITEM WHERE ID IN (:ids) AND NAME LIKE :name ORDER BY ID", parameters, Item.class);
+            assertEquals("Collection expanded and padded", 3, items.size());
+            assertEquals(Integer.valueOf(5), items.get(2).getId());
+
+            parameters.put("ids", new int[]{1, 2, 3, 4, 5, 6, 7});
+            assertEquals("Array expanded", Integer.valueOf(7),
+                    sqlper.queryOne("SELECT COUNT(*) FROM ITEM WHERE ID IN (:ids) AND NAME LIKE :name", parameters, Integer.class));
+
+            parameters.put("ids", new TreeSet<>(Arrays.asList(9, 8, 7, 6, 5)));
+            assertEquals("Set expanded", Arrays.asList(5, 6, 7, 8, 9),
+                    sqlper.query("SELECT ID FROM ITEM WHERE ID IN (:ids) AND NAME LIKE :name ORDER BY ID", parameters, Integer.class));
+            parameters.put("ids", new LinkedList<>(Arrays.asList(1, 10)));
+            assertEquals("Sequential list expanded", Arrays.asList(1, 10),
+                    sqlper.query("SELECT ID FROM ITEM WHERE ID IN (:ids) AND NAME LIKE :name ORDER BY ID", parameters, Integer.class));
+
+            parameters.put("ids", Collections.emptySet());
+            assertEquals("Empty collection matches nothing", Integer.valueOf(0),
+                    sqlper.queryOne("SELECT COUNT(*) FROM ITEM WHERE ID IN (:ids) AND NAME LIKE :name", parameters, Integer.class));
+        }
+    }
+
+    @Test
+    public void withoutParameterMetaData() throws Exception {
+
+        DefaultMappingFactory mappingFactory = new DefaultMappingFactory();
+        mappingFactory.setParameterMetaDataEnabled(false);
+        mappingFactory.declareParameterTypes("SELECT COUNT(*) FROM ITEM WHERE NAME LIKE :name", Types.VARCHAR);
+        sqlperManager = new DefaultSqlperManager(new DataSourceConnectionProvider(dataSource), mappingFactory);
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            Item item = new Item();
+            item.setName("item0");
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", item, "ID");
+            assertEquals(Integer.valueOf(1), item.getId());
+
+            // a null of unknown type is typed from the statement meta data, then from the remembered type
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", null));
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", null));
+            assertEquals("The shared meta data is left untouched", MappingMetaData.UNKNOWN_SQL_TYPE,
+                    mappingFactory.getPreparedStatementMetaDataCache().get("INSERT INTO ITEM (NAME) VALUES (?)").getSqlTypes()[0]);
+
+            assertEquals("Inferred", Integer.valueOf(2),
+                    sqlper.queryOne("SELECT COUNT(*) FROM ITEM WHERE ID > :id", Collections.singletonMap("id", 1L), Integer.class));
+            assertEquals("Declared", Integer.valueOf(1),
+                    sqlper.queryOne("SELECT COUNT(*) FROM ITEM WHERE NAME LIKE :name", Collections.singletonMap("name", "item%"), Integer.class));
+            assertEquals("Expanded", 3,
+                    sqlper.query("SELECT * FROM ITEM WHERE ID IN (:ids)", Collections.singletonMap("ids", Arrays.asList(1, 2, 3)), Item.class).size());
+        }
+    }
+
+    @Test
+    public void listener() throws Exception {
+
+        final List<StatementEvent> events = new ArrayList<>();
+        sqlperManager.addListener(new SqlperListener() {
+            @Override
+            public void statementExecuted(StatementEvent event) {
+                throw new IllegalStateException("A failing listener");
+            }
+        });
+        sqlperManager.addListener(new SqlperListener() {
+            @Override
+            public void statementExecuted(StatementEvent event) {
+                events.add(event);
+            }
+        });
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            for (int i = 0; i < 3; i++) {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item" + i));
+            }
+            assertEquals(3, sqlper.query("SELECT * FROM ITEM", Item.class).size());
+            try {
+                sqlper.queryOne("SELECT * FROM ITEM", Item.class);
+                fail("More than one row");
+            } catch (SqlperException e) {
+                // expected
+            }
+            try {
+                sqlper.update("INSERT INTO MISSING (NAME) VALUES ('item')");
+                fail("No such table");
+            } catch (SqlperException e) {
+                // expected
+            }
+        }
+
+        assertEquals("Events reach every listener, even if the statement fails to prepare", 6, events.size());
+        StatementEvent insert = events.get(0);
+        assertTrue(insert.isSuccessful());
+        assertEquals(1, insert.getRowCount());
+        assertTrue(insert.getExecuteTime() > 0);
+        StatementEvent query = events.get(3);
+        assertEquals("SELECT * FROM ITEM", query.getParsedSql().getSql());
+        assertEquals(3, query.getRowCount());
+        assertTrue(query.getMappingTime() > 0);
+        assertFalse(events.get(4).isSuccessful());
+        assertFalse(events.get(5).isSuccessful());
+        assertEquals("INSERT INTO MISSING (NAME) VALUES ('item')", events.get(5).getParsedSql().getSql());
+
+        CacheStatistics parsedSqlStatistics = ((DefaultMappingFactory) sqlperManager.getMappingFactory()).getCacheStatistics().get("parsedSql");
+        assertEquals(3, parsedSqlStatistics.getMissCount());
+        assertEquals(3, parsedSqlStatistics.getHitCount());
+    }
+
+    @Test
+    public void queryColumns() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+
+            for (int i = 0; i < 100; i++) {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", i % 10 == 0 ? null : "item" + i));
+            }
+
+            ColumnarResult result = sqlper.queryColumns("SELECT ID, CAST(ID * 2 AS BIGINT) AS DOUBLE_ID, " +
+                    "CAST(ID AS DOUBLE) / 2 AS HALF_ID, NAME, CAST(NULLIF(ID, 5) AS BIGINT) AS MAYBE_ID FROM ITEM WHERE ID > :id ORDER BY ID",
+                    Collections.singletonMap("id", 0));
+
+            assertEquals(100, result.getRowCount());
+            assertEquals(5, result.getColumnCount());
+            assertEquals(int.class, result.getColumnType(0));
+            assertEquals(long.class, result.getColumnType(result.getColumnIndex("double_id")));
+            assertEquals(double.class, result.getColumnType(2));
+            assertEquals(String.class, result.getColumnType(3));
+
+            int[] ids = result.getInts(0);
+            assertEquals(100, ids.length);
+            assertEquals(100, ids[99]);
+            assertEquals(200L, result.getLongs(1)[99]);
+            assertEquals(0.5, result.getDoubles(2)[0], 0.0);
+            assertNull(result.getStrings(3)[0]);
+            assertEquals("item1", result.getString(1, 3));
+
+            assertTrue(result.isNull(4, 4));
+            assertNull(result.getObject(4, 4));
+            assertEquals(Long.valueOf(6), result.getObject(5, 4));
+            assertEquals(1, result.getNulls(4).cardinality());
+            assertEquals(10, result.getNulls(3).cardinality());
+        }
+    }
+
+    @Test
+    public void submit() throws Exception {
+
+        sqlperManager.setExecutorService(SqlperExecutors.newFixedThreadPool(2));
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            for (int i = 0; i < 10; i++) {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item" + i));
+            }
+        }
+
+        Future<Integer> count = sqlperManager.submit(new SqlperCallback<Integer>() {
+            @Override
+            public Integer call(Sqlper sqlper) throws Exception {
+                return sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Integer.class);
+            }
+        });
+        Future<List<Item>> items = sqlperManager.submit(new SqlperCallback<List<Item>>() {
+            @Override
+            public List<Item> call(Sqlper sqlper) throws Exception {
+                return sqlper.query("SELECT * FROM ITEM WHERE ID <= :id", Collections.singletonMap("id", 3), Item.class);
+            }
+        });
+        Future<Object> failure = sqlperManager.submit(new SqlperCallback<Object>() {
+            @Override
+            public Object call(Sqlper sqlper) throws Exception {
+                return sqlper.queryOne("SELECT * FROM NOPE", Object.class);
+            }
+        });
+
+        assertEquals(Integer.valueOf(10), count.get());
+        assertEquals(3, items.get().size());
+        try {
+            failure.get();
+            fail("No such table");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(SqlperException.class));
+        }
+        ExecutorService executorService = sqlperManager.getExecutorService();
+        sqlperManager.close();
+        assertFalse("An executor that was set is left to its owner", executorService.isShutdown());
+        executorService.shutdown();
+
+        try (DefaultSqlperManager defaultManager = new DefaultSqlperManager(new DataSourceConnectionProvider(dataSource))) {
+            assertEquals(Integer.valueOf(10), defaultManager.submit(new SqlperCallback<Integer>() {
+                @Override
+                public Integer call(Sqlper sqlper) throws Exception {
+                    return sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Integer.class);
+                }
+            }).get());
+            executorService = defaultManager.getExecutorService();
+        }
+        assertTrue("The default executor is shut down with its manager", executorService.isShutdown());
+    }
+
+    @Test
+    public void pooling() throws Exception {
+
+        try (PoolingConnectionProvider pool = new PoolingConnectionProvider(dataSource, 2)) {
+            pool.setStatementCacheSize(4);
+            pool.setBorrowTimeout(100);
+            DefaultSqlperManager pooledManager = new DefaultSqlperManager(pool);
+
+            StatementCache statementCache;
+            try (Sqlper sqlper = pooledManager.open()) {
+                statementCache = ((SqlperImpl) sqlper).getStatementCache();
+                assertNotNull("Pooled connection brings its statement cache", statementCache);
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item"));
+                sqlper.getConnection().setAutoCommit(false);
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "uncommitted"));
+            }
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(0, pool.getActiveCount());
+
+            try (Sqlper sqlper = pooledManager.open()) {
+                assertSame("Connection and its statements were reused", statementCache, ((SqlperImpl) sqlper).getStatementCache());
+                assertTrue("Connection was given back in auto commit", sqlper.getConnection().getAutoCommit());
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item"));
+                assertEquals("Statement survived the previous session", 2, statementCache.getHitCount());
+                assertEquals("Uncommitted work was rolled back", Long.valueOf(2), sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Long.class));
+
+                try (Sqlper other = pooledManager.open()) {
+                    assertEquals(2, pool.getActiveCount());
+                    try {
+                        pooledManager.open();
+                        fail("Pool is exhausted");
+                    } catch (SqlperException e) {
+                        assertEquals(1, pool.getBorrowTimeoutCount());
+                    }
+                }
+            }
+            assertEquals(2, pool.getSize());
+            assertEquals(2, pool.getCreatedCount());
+            assertEquals(3, pool.getBorrowCount());
+
+            Connection connection = pool.getConnection();
+            connection.close();
+            try {
+                connection.createStatement();
+                fail("Connection was given back");
+            } catch (SQLException e) {
+                assertTrue(connection.isClosed());
+            }
+
+            connection = pool.getConnection();
+            int isolation = connection.getTransactionIsolation();
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            try (Statement statement = connection.createStatement();
+                 PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM ITEM")) {
+                assertSame("Statements belong to the borrowed connection", connection, statement.getConnection());
+                assertSame(connection, preparedStatement.getConnection());
+            }
+            connection.close();
+            connection = pool.getConnection();
+            assertFalse("Read only was restored", connection.isReadOnly());
+            assertEquals("Isolation was restored", isolation, connection.getTransactionIsolation());
+            connection.close();
+
+            pool.setMaxIdleTime(1);
+            Thread.sleep(5);
+            pool.evict();
+            assertEquals("Idle connections were evicted", 0, pool.getSize());
+            pool.setMinSize(1);
+            pool.evict();
+            assertEquals("Pool was filled up to its minimum", 1, pool.getIdleCount());
+        }
+    }
+
+    @Test
+    public void transaction() throws Exception {
+
+        final Sqlper[] sessions = new Sqlper[2];
+        Integer count = sqlperManager.transaction(new SqlperCallback<Integer>() {
+            @Override
+            public Integer call(Sqlper sqlper) throws Exception {
+                assertFalse("Transaction is started", sqlper.getConnection().getAutoCommit());
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "outer"));
+                try (Sqlper nested = sqlperManager.open()) {
+                    sessions[0] = nested;
+                    nested.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "nested"));
+                }
+                assertFalse("Nested close does not close the connection", sqlper.getConnection().isClosed());
+                return sqlperManager.transaction(new SqlperCallback<Integer>() {
+                    @Override
+                    public Integer call(Sqlper nested) throws Exception {
+                        sessions[1] = nested;
+                        return nested.queryOne("SELECT COUNT(*) FROM ITEM", Integer.class);
+                    }
+                });
+            }
+        });
+        assertEquals(Integer.valueOf(2), count);
+        assertSame("Nested sessions share the connection", sessions[0].getConnection(), sessions[1].getConnection());
+
+        try {
+            sqlperManager.transaction(new SqlperCallback<Object>() {
+                @Override
+                public Object call(Sqlper sqlper) throws Exception {
+                    sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "rolled back"));
+                    try {
+                        sqlperManager.transaction(new SqlperCallback<Object>() {
+                            @Override
+                            public Object call(Sqlper nested) throws Exception {
+                                return nested.queryOne("SELECT * FROM NOPE", Object.class);
+                            }
+                        });
+                    } catch (SqlperException e) {
+                        // swallowed, but the transaction is still rolled back
+                    }
+                    return null;
+                }
+            });
+            fail("Nested failure rolls back");
+        } catch (SqlperException e) {
+            assertTrue(e.getMessage().contains("rollback only"));
+        }
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            assertTrue("Outside of a transaction", sqlper instanceof SqlperImpl);
+            assertEquals("Only the first transaction was committed", Integer.valueOf(2), sqlper.queryOne("SELECT COUNT(*) FROM ITEM", Integer.class));
+        }
+    }
+
+    @Test
+    public void queryResultCache() throws Exception {
+
+        QueryResultCache queryResultCache = new QueryResultCache(100, 1, TimeUnit.HOURS);
+        queryResultCache.addTable("ITEM");
+        sqlperManager.setQueryResultCache(queryResultCache);
+        final List<StatementEvent> events = new ArrayList<>();
+        sqlperManager.addListener(new SqlperListener() {
+            @Override
+            public void statementExecuted(StatementEvent event) {
+                events.add(event);
+            }
+        });
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", Collections.singletonMap("name", "item1"));
+
+            String name = sqlper.queryOne("SELECT NAME FROM ITEM WHERE ID = :id", Collections.singletonMap("id", 1), String.class);
+            assertEquals("item1", name);
+            assertEquals(2, events.size());
+            assertSame("Second lookup is a hit", name, sqlper.queryOne("SELECT NAME FROM ITEM WHERE ID = :id", Collections.singletonMap("id", 1), String.class));
+            assertEquals("A hit prepares no statement", 2, events.size());
+            assertNull("Other parameters are another entry", sqlper.queryOne("SELECT NAME FROM ITEM WHERE ID = :id", Collections.singletonMap("id", 2), String.class));
+
+            List<Map> rows = sqlper.query("SELECT * FROM ITEM", Map.class);
+            assertSame(rows, sqlper.query("SELECT * FROM ITEM", Map.class));
+            try {
+                rows.get(0).put("NAME", "changed");
+                fail("Cached rows are immutable");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+
+            sqlper.query("SELECT * FROM ITEM", Item.class);
+            sqlper.query("SELECT * FROM ITEM", Item.class);
+
+            CacheStatistics statistics = queryResultCache.getStatistics();
+            assertEquals("Mutable beans are not cached", 3, statistics.getMissCount());
+            assertEquals(2, statistics.getHitCount());
+
+            sqlper.update("UPDATE ITEM SET NAME = :name WHERE ID = 1", Collections.singletonMap("name", "renamed"));
+            assertEquals("Update invalidated the table", "renamed", sqlper.queryOne("SELECT NAME FROM ITEM WHERE ID = :id", Collections.singletonMap("id", 1), String.class));
+            assertEquals(1, sqlper.query("SELECT * FROM ITEM", Map.class).size());
+            assertEquals(5, queryResultCache.getStatistics().getMissCount());
+
+            int[] ids = {1};
+            assertEquals(1, sqlper.query("SELECT NAME FROM ITEM WHERE ID IN (:ids)", Collections.singletonMap("ids", ids), String.class).size());
+            ids[0] = 2;
+            assertEquals("Changing the array does not change the cached key", 1,
+                    sqlper.query("SELECT NAME FROM ITEM WHERE ID IN (:ids)", Collections.singletonMap("ids", new int[]{1}), String.class).size());
+            assertEquals(3, queryResultCache.getStatistics().getHitCount());
+
+            List<Map> timestamps = sqlper.query("SELECT ID, CURRENT_TIMESTAMP AS NOW FROM ITEM", Map.class);
+            assertNotSame("Rows holding mutable values are not cached", timestamps, sqlper.query("SELECT ID, CURRENT_TIMESTAMP AS NOW FROM ITEM", Map.class));
+
+            queryResultCache.invalidateAll();
+            assertEquals(0, queryResultCache.size());
+        }
+    }
+
+    @Test
+    public void queryResultCacheTransactions() throws Exception {
+
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                // readers see the last committed rows instead of waiting for the writer
+                statement.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+            }
+        }
+        QueryResultCache queryResultCache = new QueryResultCache(100);
+        queryResultCache.addTable("ITEM");
+        sqlperManager.setQueryResultCache(queryResultCache);
+
+        try (Sqlper writer = sqlperManager.open(); Sqlper reader = sqlperManager.open()) {
+            writer.getConnection().setAutoCommit(false);
+            writer.update("INSERT INTO ITEM (NAME) VALUES ('item1')");
+            assertEquals("Not cached within the transaction", 1, writer.query("SELECT * FROM ITEM", Map.class).size());
+            assertEquals("Only the committed rows", 0, reader.query("SELECT * FROM ITEM", Map.class).size());
+            assertEquals("Cached after the update", 0, reader.query("SELECT * FROM ITEM", Map.class).size());
+            writer.getConnection().commit();
+            assertEquals("Not invalidated until the writer is back in auto commit", 0, reader.query("SELECT * FROM ITEM", Map.class).size());
+            writer.getConnection().setAutoCommit(true);
+            assertEquals(1, writer.query("SELECT * FROM ITEM", Map.class).size());
+            assertEquals("Commit invalidated the result", 1, reader.query("SELECT * FROM ITEM", Map.class).size());
+
+            writer.getConnection().setAutoCommit(false);
+            writer.update("DELETE FROM ITEM");
+            assertEquals(0, writer.query("SELECT * FROM ITEM", Map.class).size());
+            writer.getConnection().rollback();
+            assertEquals("Rolled back result was never cached", 1, reader.query("SELECT * FROM ITEM", Map.class).size());
+            assertEquals(1, writer.query("SELECT * FROM ITEM", Map.class).size());
+
+            writer.update("INSERT INTO ITEM (NAME) VALUES ('item2')");
+            assertEquals(1, reader.query("SELECT * FROM ITEM", Map.class).size());
+            writer.getConnection().commit();
+        }
+        try (Sqlper reader = sqlperManager.open()) {
+            assertEquals("Closing the writer invalidated the result", 2, reader.query("SELECT * FROM ITEM", Map.class).size());
+            reader.update("DELETE FROM ITEM WHERE NAME = 'item2'");
+        }
+
+        sqlperManager.transaction(new SqlperCallback<Void>() {
+            @Override
+            public Void call(Sqlper sqlper) throws Exception {
+                sqlper.update("INSERT INTO ITEM (NAME) VALUES ('item2')");
+                // from another thread, so outside of the transaction
+                int size = sqlperManager.submit(new SqlperCallback<Integer>() {
+                    @Override
+                    public Integer call(Sqlper reader) throws Exception {
+                        return reader.query("SELECT * FROM ITEM", Map.class).size();
+                    }
+                }).get();
+                assertEquals(1, size);
+                return null;
+            }
+        });
+        try (Sqlper reader = sqlperManager.open()) {
+            assertEquals("Transaction commit invalidated the result", 2, reader.query("SELECT * FROM ITEM", Map.class).size());
+        }
+    }
+
+    @Test
+    public void graphMapping() throws Exception {
+
+        GraphMapping<Author> mapping = new GraphMapping<>(Author.class, null, "ID");
+        mapping.join("books", Book.class, "BOOK_", "ID");
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("CREATE TABLE AUTHOR (ID INTEGER PRIMARY KEY, NAME VARCHAR(256))");
+            sqlper.update("CREATE TABLE BOOK (ID INTEGER PRIMARY KEY, AUTHOR_ID INTEGER, TITLE VARCHAR(256))");
+            sqlper.update("INSERT INTO AUTHOR VALUES (1, 'Austen'), (2, 'Nobody')");
+            sqlper.update("INSERT INTO BOOK VALUES (1, 1, 'Emma'), (2, 1, 'Persuasion')");
+
+            String sql = "SELECT A.ID, A.NAME, B.ID AS BOOK_ID, B.TITLE AS BOOK_TITLE " +
+                    "FROM AUTHOR A LEFT JOIN BOOK B ON B.AUTHOR_ID = A.ID WHERE A.ID >= :id ORDER BY A.ID, B.ID";
+            for (int i = 0; i < 2; i++) {
+                List<Author> authors = sqlper.collect(sql, Collections.singletonMap("id", 1), mapping.newCollector());
+                assertEquals("Parents are de-duplicated", 2, authors.size());
+                assertEquals("Austen", authors.get(0).getName());
+                assertEquals(2, authors.get(0).getBooks().size());
+                assertEquals("Persuasion", authors.get(0).getBooks().get(1).getTitle());
+                assertNull("No child on the outer side of the join", authors.get(1).getBooks());
+            }
+
+            GraphMapping<Author> shortPrefix = new GraphMapping<>(Author.class, null, "ID");
+            shortPrefix.join("books", Book.class, "N", "ID");
+            List<Author> authors = sqlper.collect("SELECT A.ID, A.NAME, B.ID AS N_ID, B.TITLE AS N_TITLE " +
+                    "FROM AUTHOR A JOIN BOOK B ON B.AUTHOR_ID = A.ID ORDER BY B.ID", shortPrefix.newCollector());
+            assertEquals("NAME is not a column of the N prefix", "Austen", authors.get(0).getName());
+            assertEquals("Emma", authors.get(0).getBooks().get(0).getTitle());
+        }
+    }
+
+    @Test
+    public void constructorMapping() throws Exception {
+
+        sqlperManager.getMappingFactory().getMapperRegistry().register(ImmutableItem.class, new ConstructorObjectMapper<ImmutableItem>());
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES (:name)", new ImmutableItem("item1", 0));
+            sqlper.update("INSERT INTO ITEM (NAME) VALUES (NULL)");
+
+            List<ImmutableItem> items = sqlper.query("SELECT * FROM ITEM ORDER BY ID", ImmutableItem.class);
+            assertEquals(2, items.size());
+            assertEquals("Matched by name, not by position", 1, items.get(0).getId());
+            assertEquals("item1", items.get(0).getName());
+            assertNull(items.get(1).getName());
+
+            ImmutableItem item = sqlper.queryOne("SELECT ID, NAME FROM ITEM WHERE NAME = :name", Collections.singletonMap("name", "item1"), ImmutableItem.class);
+            assertEquals(1, item.getId());
+
+            sqlperManager.getMappingFactory().getMapperRegistry().register(String.class, new JDBCScalarMapper(String.class) {
+                @Override
+                protected Object get(ResultSet resultSet, int column, Class type, int sqlType) throws SQLException {
+                    String value = resultSet.getString(column);
+                    return value != null ? value.toUpperCase() : null;
+                }
+            });
+            assertEquals("Registering a mapper cleared the constructor plans", "ITEM1",
+                    sqlper.query("SELECT * FROM ITEM ORDER BY ID", ImmutableItem.class).get(0).getName());
+
+            try {
+                sqlper.queryOne("SELECT NAME FROM ITEM WHERE ID = 1", ImmutableItem.class);
+                fail("No constructor matches a single NAME column");
+            } catch (SqlperException e) {
+                assertTrue(e.getMessage().startsWith("No constructor"));
+            }
+        }
+    }
+
+    @Test
+    public void lobStreams() throws Exception {
+
+        byte[] content = new byte[300000];
+        new Random(42).nextBytes(content);
+        Path file = Files.createTempFile("sqlper", ".bin");
+        Files.write(file, content);
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("CREATE TABLE DOC (ID INTEGER PRIMARY KEY, DATA BLOB, TEXT CLOB)");
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                Map<String, Object> parameters = new HashMap<>();
+                parameters.put("id", 1);
+                parameters.put("data", channel);
+                parameters.put("text", new StringReader("some long text"));
+                sqlper.update("INSERT INTO DOC VALUES (:id, :data, :text)", parameters);
+            }
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("id", 2);
+            parameters.put("data", new ByteArrayInputStream(new byte[]{1, 2, 3}));
+            parameters.put("text", null);
+            sqlper.update("INSERT INTO DOC VALUES (:id, :data, :text)", parameters);
+
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            Long byteCount = sqlper.collect("SELECT DATA FROM DOC WHERE ID = :id", Collections.singletonMap("id", 1), new StreamCollector(target));
+            assertEquals(Long.valueOf(content.length), byteCount);
+            assertArrayEquals("Uploaded from the file channel and streamed back", content, target.toByteArray());
+
+            try (ResultIterator<Reader> texts = sqlper.iterate("SELECT TEXT FROM DOC WHERE ID = 1", Reader.class)) {
+                assertEquals("some long text", new BufferedReader(texts.next()).readLine());
+            }
+            try (ResultIterator<InputStream> streams = sqlper.iterate("SELECT DATA FROM DOC WHERE ID = 2", InputStream.class)) {
+                InputStream inputStream = streams.next();
+                assertEquals(1, inputStream.read());
+                assertEquals(2, inputStream.read());
+                assertEquals(3, inputStream.read());
+                assertEquals(-1, inputStream.read());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void bulkLoader() throws Exception {
+
+        Path file = Files.createTempFile("sqlper", ".csv");
+        Files.write(file, ("CODE,Name,QTY\r\n"
+                + "A1,first,10\r\n"
+                + "A2,\"second, quoted\",-20\n"
+                + "\n"
+                + "A3,\"a \"\"third\"\"\",\n"
+                + "A4,,9999999999\n"
+                + "A5,fifth,5").getBytes("UTF-8"));
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("CREATE TABLE STOCK (CODE VARCHAR(10) PRIMARY KEY, NAME VARCHAR(100), QTY BIGINT)");
+        }
+
+        QueryResultCache queryResultCache = new QueryResultCache(100);
+        queryResultCache.addTable("STOCK");
+        sqlperManager.setQueryResultCache(queryResultCache);
+        final List<StatementEvent> events = new ArrayList<>();
+        sqlperManager.addListener(new SqlperListener() {
+            @Override
+            public void statementExecuted(StatementEvent event) {
+                events.add(event);
+            }
+        });
+
+        try {
+            BulkLoader loader = new BulkLoader(sqlperManager, "INSERT INTO STOCK (QTY, CODE, NAME) VALUES (:qty, :code, :name)");
+            loader.setBatchSize(2);
+            loader.setCommitInterval(3);
+            // smaller than two records, to move the window in the middle of them
+            loader.setWindowSize(24);
+
+            try (Sqlper sqlper = sqlperManager.open()) {
+                assertEquals(0, sqlper.query("SELECT * FROM STOCK", Map.class).size());
+            }
+            events.clear();
+            BulkLoadResult result = loader.load(file);
+            assertEquals(5, result.getRowCount());
+            assertEquals(Files.size(file), result.getOffset());
+            assertEquals(Files.size(file), loader.getCommittedOffset());
+            assertEquals("One batch update per commit", 2, events.size());
+            assertEquals(3, events.get(0).getRowCount());
+
+            try (Sqlper sqlper = sqlperManager.open()) {
+                assertEquals("The load invalidated the cached result", 5, sqlper.query("SELECT * FROM STOCK", Map.class).size());
+                List<Map> rows = sqlper.query("SELECT * FROM STOCK ORDER BY CODE", Map.class);
+                assertEquals(5, rows.size());
+                assertEquals("first", rows.get(0).get("NAME"));
+                assertEquals(10L, rows.get(0).get("QTY"));
+                assertEquals("second, quoted", rows.get(1).get("NAME"));
+                assertEquals(-20L, rows.get(1).get("QTY"));
+                assertEquals("a \"third\"", rows.get(2).get("NAME"));
+                assertNull("An empty field is null", rows.get(2).get("QTY"));
+                assertNull(rows.get(3).get("NAME"));
+                assertEquals(9999999999L, rows.get(3).get("QTY"));
+
+                sqlper.update("DELETE FROM STOCK WHERE CODE IN ('A4', 'A5')");
+            }
+
+            // resume after the first commit
+            long offset = new String(Files.readAllBytes(file), "UTF-8").indexOf("A4");
+            result = loader.load(file, offset);
+            assertEquals(2, result.getRowCount());
+            try (Sqlper sqlper = sqlperManager.open()) {
+                assertEquals(Integer.valueOf(5), sqlper.queryOne("SELECT COUNT(*) FROM STOCK", Integer.class));
+            }
+
+            Path overflow = Files.createTempFile("sqlper", ".csv");
+            try {
+                Files.write(overflow, "CODE,NAME\nB1,3000000000\n".getBytes("UTF-8"));
+                BulkLoader intLoader = new BulkLoader(sqlperManager, "INSERT INTO LINE_COUNT (CODE, N) VALUES (:code, :name)");
+                try (Sqlper sqlper = sqlperManager.open()) {
+                    sqlper.update("CREATE TABLE LINE_COUNT (CODE VARCHAR(10), N INTEGER)");
+                }
+                intLoader.load(overflow);
+                fail("An integer out of range should fail instead of wrapping around");
+            } catch (SqlperException e) {
+                try (Sqlper sqlper = sqlperManager.open()) {
+                    assertEquals(Integer.valueOf(0), sqlper.queryOne("SELECT COUNT(*) FROM LINE_COUNT", Integer.class));
+                }
+            } finally {
+                Files.delete(overflow);
+            }
+
+            final BulkLoader transactionLoader = loader;
+            final Path transactionFile = file;
+            try {
+                sqlperManager.transaction(new SqlperCallback<Void>() {
+                    @Override
+                    public Void call(Sqlper sqlper) throws Exception {
+                        transactionLoader.load(transactionFile);
+                        return null;
+                    }
+                });
+                fail("The loader cannot commit the transaction of another unit of work");
+            } catch (SqlperException e) {
+                assertTrue(e.getMessage().contains("within a transaction"));
+            }
+
+            try {
+                loader.load(file);
+                fail("Duplicate keys should fail");
+            } catch (SqlperException e) {
+                assertEquals("Resume after the header, nothing was committed", "CODE,Name,QTY\r\n".length(), loader.getCommittedOffset());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void export() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("CREATE TABLE REPORT (ID BIGINT, LABEL VARCHAR(50), PRICE DECIMAL(10, 2), RATIO DOUBLE, ACTIVE BOOLEAN, NOTE CLOB, DATA VARBINARY(10), DAY DATE)");
+            sqlper.update("INSERT INTO REPORT VALUES (-1, 'plain', 1.50, 2.5, TRUE, 'a \"note\"', X'00FF', DATE '2020-01-02')");
+            sqlper.update("INSERT INTO REPORT VALUES (2, 'with, comma\nand \"quote\"', NULL, NULL, NULL, NULL, NULL, NULL)");
+            sqlper.update("INSERT INTO REPORT (ID, LABEL) VALUES (3, '')");
+
+            StringWriter csv = new StringWriter();
+            Long rowCount = sqlper.collect("SELECT * FROM REPORT ORDER BY ID", new CsvCollector(csv));
+            assertEquals(Long.valueOf(3), rowCount);
+            assertEquals("ID,LABEL,PRICE,RATIO,ACTIVE,NOTE,DATA,DAY\n"
+                    + "-1,plain,1.50,2.5,true,\"a \"\"note\"\"\",00ff,2020-01-02\n"
+                    + "2,\"with, comma\nand \"\"quote\"\"\",,,,,,\n"
+                    + "3,\"\",,,,,,\n", csv.toString());
+
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            sqlper.collect("SELECT ID, LABEL, PRICE, ACTIVE, NOTE, DATA FROM REPORT WHERE ID < 3 ORDER BY ID", new JsonLinesCollector(json));
+            assertEquals("{\"ID\":-1,\"LABEL\":\"plain\",\"PRICE\":1.50,\"ACTIVE\":true,\"NOTE\":\"a \\\"note\\\"\",\"DATA\":\"00ff\"}\n"
+                    + "{\"ID\":2,\"LABEL\":\"with, comma\\nand \\\"quote\\\"\",\"PRICE\":null,\"ACTIVE\":null,\"NOTE\":null,\"DATA\":null}\n",
+                    json.toString("UTF-8"));
+
+            StringWriter empty = new StringWriter();
+            assertEquals(Long.valueOf(0), sqlper.collect("SELECT ID, LABEL FROM REPORT WHERE ID > 3", new CsvCollector(empty)));
+            assertEquals("The header without rows", "ID,LABEL\n", empty.toString());
+
+            json.reset();
+            sqlper.collect("SELECT ID AS \"a\tb\" FROM REPORT WHERE ID = 3", new JsonLinesCollector(json));
+            assertEquals("{\"a\\tb\":3}\n", json.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void compactRows() throws Exception {
+
+        try (Sqlper sqlper = sqlperManager.open()) {
+            sqlper.update("CREATE TABLE LINE (LINE_ID INTEGER, ITEM_NAME VARCHAR(50), QTY INTEGER)");
+            sqlper.update("INSERT INTO LINE VALUES (1, 'one', NULL)");
+            sqlper.update("INSERT INTO LINE VALUES (2, 'two', 20)");
+
+            List<Map> rows = sqlper.query("SELECT LINE_ID, ITEM_NAME, QTY, LINE_ID AS lineId FROM LINE ORDER BY LINE_ID", Map.class);
+            assertEquals(2, rows.size());
+            Map<String, Object> row = rows.get(0);
+            assertEquals("Columns of the same name share a key", 3, row.size());
+            assertEquals(1, row.get("lineId"));
+            assertEquals("one", row.get("itemName"));
+            assertEquals("one", row.get("item_name"));
+            assertTrue(row.containsKey("QTY"));
+            assertNull(row.get("qty"));
+            assertFalse(row.containsKey("missing"));
+            assertEquals(Arrays.asList("LINE_ID", "ITEM_NAME", "QTY"), new ArrayList<>(row.keySet()));
+
+            Map<String, Object> expected = new HashMap<>();
+            expected.put("LINE_ID", 1);
+            expected.put("ITEM_NAME", "one");
+            expected.put("QTY", null);
+            assertEquals(expected, row);
+            assertEquals(expected.hashCode(), row.hashCode());
+
+            row.put("extra", true);
+            row.remove("Qty");
+            assertEquals(3, row.size());
+            assertEquals(true, row.get("EXTRA"));
+            assertFalse(row.containsKey("QTY"));
+            assertEquals(Arrays.asList("LINE_ID", "ITEM_NAME", "extra"), new ArrayList<>(row.keySet()));
+            assertEquals("Rows share the column index, not the values", 20, rows.get(1).get("QTY"));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+                output.writeObject(row);
+            }
+            Map<String, Object> copy;
+            try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (Map<String, Object>) input.readObject();
+            }
+            assertEquals(row, copy);
+            assertEquals("A removed column stays removed", 3, copy.size());
+            assertFalse(copy.containsKey("QTY"));
+            assertEquals(Arrays.asList("LINE_ID", "ITEM_NAME", "extra"), new ArrayList<>(copy.keySet()));
+            copy.put("qty", 10);
+            assertEquals(4, copy.size());
+            assertEquals(10, copy.get("QTY"));
+
+            List<List> lists = sqlper.query("SELECT LINE_ID, ITEM_NAME FROM LINE ORDER BY LINE_ID", List.class);
+            List<Object> list = lists.get(1);
+            assertEquals(Arrays.<Object>asList(2, "two"), list);
+            list.add("more");
+            list.remove(0);
+            assertEquals(Arrays.<Object>asList("two", "more"), list);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ca.pjer.sqlper.test;
+
+import ca.pjer.sqlper.support.cache.CacheStatistics;
+import ca.pjer.sqlper.support.cache.WeakCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeakCacheTest {
+
+    @Test
+    public void segments() throws Exception {
+
+        WeakCache<Object, Integer> cache = new WeakCache<>();
+        Object[] keys = new Object[100];
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Object();
+            cache.put(keys[i], i);
+        }
+        assertEquals(100, cache.size());
+
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(Integer.valueOf(i), cache.get(keys[i]));
+        }
+        assertNull(cache.get(new Object()));
+
+        cache.remove(keys[0]);
+        assertNull(cache.get(keys[0]));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(100, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(99, statistics.getSize());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}